@@ -0,0 +1,105 @@
+#!/usr/bin/env bash
+# Measures startup of the tool: time to first prompt, and time to the result of a first command, for every launch mode that has been built.
+#
+#   default     java -jar, default profile                            (mvn package)
+#   fast-start  java -jar, fast-start profile                         (mvn package)
+#   aot-cds     exploded classpath, fast-start profile, Spring AOT and class data sharing archive (mvn -Pfast-start package)
+#
+# Usage: scripts/startup-benchmark.sh [runs]
+# Environment:
+#   COMMAND    first command to run (default: ethRpcGetBalance of the zero address, so a node connection is part of the measurement)
+#   JAVA_OPTS  extra JVM options for every mode, e.g. -Dethereum.nodeUrl=http://127.0.0.1:8545
+#   MODES      modes to measure (default: every mode that has been built)
+#   TIMEOUT    seconds to wait for a run to finish (default: 120)
+#
+# Every run is appended to target/startup-benchmark.csv (date, git revision, mode, run, ms to prompt, ms to first result), so regressions can be tracked.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+COMMAND=${COMMAND:-ethRpcGetBalance 0x0000000000000000000000000000000000000000}
+JAVA_OPTS=${JAVA_OPTS:-}
+TIMEOUT=${TIMEOUT:-120}
+PROMPT='ethereum-tool:'
+JAR=$(ls target/ethereum-tool-*.jar 2>/dev/null | grep -v '\.original$' | head -1 || true)
+CDS_ARCHIVE=target/ethereum-tool.jsa
+RESULTS=target/startup-benchmark.csv
+REVISION=$(git rev-parse --short HEAD 2>/dev/null || echo unknown)
+
+# JAVA_OPTS is split on purpose.
+# shellcheck disable=SC2086
+launch() {
+  case "$1" in
+    default) timeout "$TIMEOUT" java $JAVA_OPTS -jar "$JAR" ;;
+    fast-start) timeout "$TIMEOUT" java $JAVA_OPTS -Dspring.profiles.active=fast-start -jar "$JAR" ;;
+    aot-cds) timeout "$TIMEOUT" java $JAVA_OPTS -XX:SharedArchiveFile="$CDS_ARCHIVE" -Xlog:cds=off -Dspring.aot.enabled=true -Dspring.profiles.active=fast-start \
+      -cp 'target/lib/*' com.technest.ethereum.tool.EthereumToolApplication ;;
+  esac
+}
+
+is_built() {
+  case "$1" in
+    default | fast-start) [[ -n "$JAR" ]] ;;
+    aot-cds) [[ -f "$CDS_ARCHIVE" && -d target/lib ]] ;;
+  esac
+}
+
+now_ms() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+# Runs the tool once, feeding it the command and then exit, and prints "<ms to first prompt> <ms to first result>". The result is done when the prompt shows
+# up for the second time. Output is read as it comes (split on the '>' ending the prompt) instead of polled, so measuring doesn't take CPU from the tool.
+measure() {
+  local output
+  output=$(mktemp)
+  local start prompt_ms="" result_ms="" prompts=0 chunk
+  start=$(now_ms)
+  while IFS= read -r -d '>' chunk; do
+    [[ "$chunk" == *"$PROMPT" ]] || continue
+    prompts=$((prompts + 1))
+    if [[ $prompts -eq 1 ]]; then
+      prompt_ms=$(($(now_ms) - start))
+    elif [[ $prompts -eq 2 ]]; then
+      result_ms=$(($(now_ms) - start))
+    fi
+  done < <(printf '%s\nexit\n' "$COMMAND" | launch "$1" 2>&1 | tee "$output")
+
+  if [[ -z "$result_ms" ]]; then
+    echo "Run failed, output kept in $output" >&2
+    echo "- -"
+    return
+  fi
+  rm -f "$output"
+  echo "$prompt_ms $result_ms"
+}
+
+median() {
+  sort -n | awk '{ values[NR] = $1 } END { if (NR == 0) print "-"; else if (NR % 2) print values[(NR + 1) / 2]; else print int((values[NR / 2] + values[NR / 2 + 1]) / 2) }'
+}
+
+[[ -f "$RESULTS" ]] || echo "date,revision,mode,run,promptMs,firstResultMs" >"$RESULTS"
+
+printf '%-12s %16s %16s %20s\n' mode "prompt (median)" "prompt (min)" "first result (median)"
+for mode in ${MODES:-default fast-start aot-cds}; do
+  if ! is_built "$mode"; then
+    echo "Skipping $mode, it hasn't been built" >&2
+    continue
+  fi
+
+  prompts=() results=()
+  for run in $(seq "$RUNS"); do
+    read -r prompt_ms result_ms < <(measure "$mode")
+    echo "$(date -u +%Y-%m-%dT%H:%M:%SZ),$REVISION,$mode,$run,$prompt_ms,$result_ms" >>"$RESULTS"
+    if [[ "$prompt_ms" != "-" ]]; then
+      prompts+=("$prompt_ms")
+      results+=("$result_ms")
+    fi
+  done
+
+  printf '%-12s %13s ms %13s ms %17s ms\n' "$mode" \
+    "$(printf '%s\n' "${prompts[@]}" | median)" \
+    "$(printf '%s\n' "${prompts[@]}" | sort -n | head -1)" \
+    "$(printf '%s\n' "${results[@]}" | median)"
+done
@@ -0,0 +1,72 @@
+package com.technest.ethereum.tool.exchangerate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// Conversions done by ExchangeRateService, compared with the plain BigDecimal arithmetic it used to do.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnitConversionBenchmark {
+
+    private static final BigDecimal ETH_TO_USD = new BigDecimal("1922.51");
+    private static final BigDecimal BTC_TO_USD = new BigDecimal("30607.10");
+
+    private UnitConverter unitConverter;
+    private final BigDecimal usdAmount = new BigDecimal("10.50");
+    // Fee of a 65000 gas transaction at 41.5 gweis per gas.
+    private final BigInteger feeInWeis = BigInteger.valueOf(2_697_500_000_000_000L);
+
+    @Setup
+    public void setUp() {
+        unitConverter = new UnitConverter(new ExchangeRates(BTC_TO_USD, ETH_TO_USD, Instant.now(), false));
+    }
+
+    @Benchmark
+    public BigInteger fromUsdToWeis() {
+        return unitConverter.fromUsdToWeis(usdAmount);
+    }
+
+    @Benchmark
+    public BigInteger fromUsdToWeisWithBigDecimal() {
+        return usdAmount.multiply(new BigDecimal("1000000000000000000.0")).divide(ETH_TO_USD, 9, RoundingMode.HALF_UP).toBigInteger();
+    }
+
+    @Benchmark
+    public BigDecimal fromWeisToUsd() {
+        return unitConverter.fromWeisToUsd(feeInWeis);
+    }
+
+    @Benchmark
+    public BigDecimal fromWeisToUsdWithBigDecimal() {
+        return new BigDecimal(feeInWeis).multiply(ETH_TO_USD).divide(new BigDecimal("1000000000000000000.0"), 9, RoundingMode.HALF_UP);
+    }
+
+    @Benchmark
+    public long fromUsdToSatoshis() {
+        return unitConverter.fromUsdToSatoshis(usdAmount);
+    }
+
+    @Benchmark
+    public BigDecimal fromSatoshisToUsd() {
+        return unitConverter.fromSatoshisToUsd(34_305L);
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.technest.ethereum.tool.service;
+
+import org.bitcoinj.core.ECKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Public key decompression plus Keccak-256 of the uncompressed key.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddressGenerationBenchmark {
+
+    private final EthereumAddressGeneratorService ethereumAddressGeneratorService = new EthereumAddressGeneratorService();
+    private ECKey pubKey;
+
+    @Setup
+    public void setUp() {
+        pubKey = ECKey.fromPublicOnly(new ECKey().getPubKeyPoint(), true);
+    }
+
+    @Benchmark
+    public String generateAddressFrom() {
+        return ethereumAddressGeneratorService.generateAddressFrom(pubKey);
+    }
+
+}
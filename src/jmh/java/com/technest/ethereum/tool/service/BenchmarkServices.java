@@ -0,0 +1,35 @@
+package com.technest.ethereum.tool.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technest.ethereum.tool.configuration.ERC20MetadataCacheConfigProperties;
+import com.technest.ethereum.tool.configuration.JournalConfigProperties;
+import com.technest.ethereum.tool.journal.TransactionJournal;
+import org.web3j.protocol.core.methods.response.EthChainId;
+
+// Builds the services needed by benchmarks without a Spring context. Only code paths which don't talk to the node are benchmarked, so no Web3j is needed.
+public final class BenchmarkServices {
+
+    private BenchmarkServices() {
+    }
+
+    public static EthChainId chainId() {
+        final var ethChainId = new EthChainId();
+        ethChainId.setResult("11155111");
+        return ethChainId;
+    }
+
+    public static ERC20Service erc20Service(EthChainId chainId) {
+        final var tokenMetadataCache = new ERC20TokenMetadataCache(new ERC20MetadataCacheConfigProperties(), chainId, new ObjectMapper());
+        return new ERC20Service(null, new JsonRpcBatchService(null), tokenMetadataCache);
+    }
+
+    public static EthereumTransactionService ethereumTransactionService(EthChainId chainId) {
+        return new EthereumTransactionService(null, chainId, erc20Service(chainId), null, null, null, transactionJournal(), null);
+    }
+
+    // Journaling is disabled, as no file is configured.
+    public static TransactionJournal transactionJournal() {
+        return new TransactionJournal(new JournalConfigProperties());
+    }
+
+}
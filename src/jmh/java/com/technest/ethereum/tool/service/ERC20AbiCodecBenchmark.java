@@ -0,0 +1,90 @@
+package com.technest.ethereum.tool.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Encodes ERC-20 call data and decodes results with the specialized codec and with web3j's reflection based encoder and decoder. That both give the same
+// bytes and values is checked by ERC20AbiCodecTest.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ERC20AbiCodecBenchmark {
+
+    private static final String DESTINATION_ADDRESS = "0x5aAeb6053F3E94C9b9A09f33669435E7Ef1BeAed";
+    private static final BigInteger VALUE = new BigInteger("520155421037341000000");
+    private static final String BALANCE_RESULT = Numeric.toHexStringWithPrefixZeroPadded(VALUE, 64);
+    private static final String SYMBOL_RESULT = encodeString("USDT");
+
+    @Benchmark
+    public String encodeTransferWithCodec() {
+        return ERC20AbiCodec.encodeTransfer(DESTINATION_ADDRESS, VALUE);
+    }
+
+    @Benchmark
+    public String encodeTransferWithWeb3j() {
+        return FunctionEncoder.encode(transferFunction(DESTINATION_ADDRESS, VALUE));
+    }
+
+    @Benchmark
+    public BigInteger decodeBalanceWithCodec() {
+        return ERC20AbiCodec.decodeUint256(BALANCE_RESULT);
+    }
+
+    @Benchmark
+    public Object decodeBalanceWithWeb3j() {
+        return decode(BALANCE_RESULT, new TypeReference<Uint256>() {});
+    }
+
+    @Benchmark
+    public String decodeSymbolWithCodec() {
+        return ERC20AbiCodec.decodeString(SYMBOL_RESULT);
+    }
+
+    @Benchmark
+    public Object decodeSymbolWithWeb3j() {
+        return decode(SYMBOL_RESULT, new TypeReference<Utf8String>() {});
+    }
+
+    private static Function transferFunction(String to, BigInteger value) {
+        return new Function("transfer", List.of(new Address(to), new Uint256(value)), Collections.emptyList());
+    }
+
+    private static Function balanceOfFunction(String address) {
+        return new Function("balanceOf", List.of(new Address(address)), List.of(new TypeReference<Uint256>() {}));
+    }
+
+    private static <T extends Type> Object decode(String result, TypeReference<T> type) {
+        final List<TypeReference<Type>> outputs = List.of((TypeReference<Type>) (TypeReference<?>) type);
+        return FunctionReturnDecoder.decode(result, outputs).get(0).getValue();
+    }
+
+    private static String encodeString(String value) {
+        return "0x" + Numeric.toHexStringNoPrefixZeroPadded(BigInteger.valueOf(32), 64) + FunctionEncoder.encodeConstructor(List.of(new Utf8String(value)))
+                .substring(64);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.technest.ethereum.tool.service;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bouncycastle.math.ec.ECPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.crypto.TransactionEncoder;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+// Signature check (plus recovery id) and signed transaction encoding, as done by addSignToUnsignedRawEthereumTx for every transaction.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureAttachmentBenchmark {
+
+    private SignatureAttachmentService signatureAttachmentService;
+    private ECPoint publicKey;
+    private String txInHex;
+    private byte[] signature;
+    private byte[] messageHash;
+
+    @Setup
+    public void setUp() {
+        final var chainId = BenchmarkServices.chainId();
+        final var ethereumTransactionService = BenchmarkServices.ethereumTransactionService(chainId);
+        signatureAttachmentService = new SignatureAttachmentService(ethereumTransactionService, chainId, BenchmarkServices.transactionJournal());
+
+        final var key = new ECKey();
+        final var transaction = RawTransaction.createEtherTransaction(chainId.getChainId().longValue(), BigInteger.ONE, BigInteger.valueOf(21_000),
+                "0x5aAeb6053F3E94C9b9A09f33669435E7Ef1BeAed", BigInteger.TEN.pow(15), BigInteger.valueOf(1_500_000_000L), BigInteger.valueOf(41_500_000_000L));
+        messageHash = ethereumTransactionService.getHashToSign(transaction);
+        final var ecdsaSignature = key.sign(Sha256Hash.wrap(messageHash));
+
+        publicKey = ECKey.fromPublicOnly(key.getPubKeyPoint(), true).getPubKeyPoint();
+        txInHex = HexFormat.of().formatHex(TransactionEncoder.encode(transaction));
+        signature = Numeric.hexStringToByteArray(Numeric.toHexStringNoPrefixZeroPadded(ecdsaSignature.r, 64) + Numeric.toHexStringNoPrefixZeroPadded(ecdsaSignature.s, 64));
+    }
+
+    @Benchmark
+    public byte[] attachSignature() {
+        return signatureAttachmentService.attachSignature(publicKey, TransactionDecoder.decode(txInHex), signature, messageHash);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.technest.ethereum.tool.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.TransactionEncoder;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+// Builds and encodes EIP-1559 transactions the same way createUnsignedRawEthereumTx does.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionEncodingBenchmark {
+
+    private static final String DESTINATION_ADDRESS = "0x5aAeb6053F3E94C9b9A09f33669435E7Ef1BeAed";
+    private static final String CONTRACT_ADDRESS = "0x6175a8471c2122f778445e7e07a164250a19e661";
+    private static final BigInteger NONCE = BigInteger.valueOf(42);
+    private static final BigInteger MAX_PRIORITY_FEE_PER_GAS = BigInteger.valueOf(1_500_000_000L);
+    private static final BigInteger MAX_FEE_PER_GAS = BigInteger.valueOf(41_500_000_000L);
+
+    private EthereumTransactionService ethereumTransactionService;
+
+    @Setup
+    public void setUp() {
+        ethereumTransactionService = BenchmarkServices.ethereumTransactionService(BenchmarkServices.chainId());
+    }
+
+    @Benchmark
+    public byte[] encodeEtherTransfer() {
+        final var transaction = ethereumTransactionService.createTransaction(NONCE, DESTINATION_ADDRESS, BigInteger.valueOf(520_155_421_037_341L), MAX_PRIORITY_FEE_PER_GAS,
+                MAX_FEE_PER_GAS, BigInteger.valueOf(21_000));
+        return TransactionEncoder.encode(transaction);
+    }
+
+    @Benchmark
+    public byte[] encodeERC20Transfer() {
+        final var transaction = ethereumTransactionService.createTransaction(NONCE, DESTINATION_ADDRESS, BigInteger.valueOf(10_500_000), MAX_PRIORITY_FEE_PER_GAS,
+                MAX_FEE_PER_GAS, BigInteger.valueOf(65_000), CONTRACT_ADDRESS);
+        return TransactionEncoder.encode(transaction);
+    }
+
+}
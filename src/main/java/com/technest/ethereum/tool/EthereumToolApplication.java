@@ -2,10 +2,18 @@ package com.technest.ethereum.tool;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class EthereumToolApplication {
     public static void main(String[] args) {
-        SpringApplication.run(EthereumToolApplication.class, args);
+        final var context = SpringApplication.run(EthereumToolApplication.class, args);
+        // Shell runs on the main thread, so once run returns either the user quit or the commands given as arguments were run. Background threads (fee oracle,
+        // scheduled tasks...) would keep the JVM alive otherwise, which is a problem for scripted invocations. Server mode keeps running until it's stopped.
+        if (!(context instanceof WebServerApplicationContext)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 }
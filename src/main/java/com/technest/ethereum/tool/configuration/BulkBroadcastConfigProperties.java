@@ -0,0 +1,19 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.bulk-broadcast")
+public class BulkBroadcastConfigProperties {
+    // Transactions per eth_sendRawTransaction JSON-RPC batch, and most transactions of the same sender sent in a row.
+    private int batchSize = 50;
+    private int batchesInFlight = 4;
+    // Transactions failing with a retryable error are sent again, up to this number of attempts in total.
+    private int maxAttempts = 3;
+    private Duration retryDelay = Duration.ofSeconds(12);
+}
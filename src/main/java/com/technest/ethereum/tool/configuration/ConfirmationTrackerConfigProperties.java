@@ -0,0 +1,17 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.confirmation-tracker")
+public class ConfirmationTrackerConfigProperties {
+    private Duration pollInterval = Duration.ofSeconds(1);
+    private int confirmations = 1;
+    private Duration timeout = Duration.ofMinutes(10);
+    private int maxBatchSize = 100;
+}
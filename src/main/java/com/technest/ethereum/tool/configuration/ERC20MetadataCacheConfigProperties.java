@@ -0,0 +1,16 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.erc20-metadata-cache")
+public class ERC20MetadataCacheConfigProperties {
+    private int maxSize = 1000;
+    private String file;
+    private Duration writeDelay = Duration.ofSeconds(5);
+}
@@ -1,17 +1,54 @@
 package com.technest.ethereum.tool.configuration;
 
+import com.technest.ethereum.tool.rpc.CoalescingWeb3jService;
+import com.technest.ethereum.tool.rpc.InstrumentedWeb3jService;
+import com.technest.ethereum.tool.rpc.RateGovernor;
+import com.technest.ethereum.tool.rpc.RateGovernorInterceptor;
+import com.technest.ethereum.tool.rpc.RoutingWeb3jService;
+import com.technest.ethereum.tool.rpc.RpcEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.methods.response.EthChainId;
 import org.web3j.protocol.http.HttpService;
 
+import java.util.stream.Stream;
+
 @Configuration
 public class EthereumNetworkConfig {
 
     @Bean
-    public Web3j ethereumNetworkConnection(EthereumNetworkConfigProperties ethereumNetworkConfigProperties) {
-        return Web3j.build(new HttpService(ethereumNetworkConfigProperties.getNodeUrl()));
+    public Web3j ethereumNetworkConnection(RoutingWeb3jService ethereumNetworkService, ReadCoalescingConfigProperties readCoalescingConfigProperties,
+                                           MeterRegistry meterRegistry) {
+        return Web3j.build(new CoalescingWeb3jService(ethereumNetworkService, readCoalescingConfigProperties, meterRegistry));
+    }
+
+    @Bean
+    public RoutingWeb3jService ethereumNetworkService(EthereumNetworkConfigProperties ethereumNetworkConfigProperties, RateGovernorConfigProperties rateGovernorConfigProperties,
+                                                      MeterRegistry meterRegistry) {
+        final var nodeUrls = Stream.concat(Stream.ofNullable(ethereumNetworkConfigProperties.getNodeUrl()), ethereumNetworkConfigProperties.getNodeUrls().stream())
+                .distinct()
+                .toList();
+        final var endpoints = nodeUrls.stream()
+                .map(nodeUrl -> new RpcEndpoint(nodeUrl, new InstrumentedWeb3jService(httpServiceFor(nodeUrl, rateGovernorConfigProperties, meterRegistry),
+                        RpcEndpoint.nameOf(nodeUrl), meterRegistry)))
+                .toList();
+
+        return new RoutingWeb3jService(endpoints, ethereumNetworkConfigProperties.getHedging());
+    }
+
+    // Every node gets its own rate governor, as each provider has its own quota.
+    private static HttpService httpServiceFor(String nodeUrl, RateGovernorConfigProperties properties, MeterRegistry meterRegistry) {
+        if (!properties.isEnabled()) {
+            return new HttpService(nodeUrl);
+        }
+
+        final var governor = new RateGovernor(RpcEndpoint.nameOf(nodeUrl), properties, meterRegistry);
+        final var httpClient = HttpService.getOkHttpClientBuilder()
+                .addInterceptor(new RateGovernorInterceptor(governor, properties.getMethodCosts(), properties.getDefaultMethodCost(), properties.getMaxRetries()))
+                .build();
+        return new HttpService(nodeUrl, httpClient);
     }
 
     @Bean
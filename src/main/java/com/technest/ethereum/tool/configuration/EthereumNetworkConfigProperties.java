@@ -4,10 +4,26 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
+
 @Data
 @Component
 @ConfigurationProperties("ethereum")
 public class EthereumNetworkConfigProperties {
     private String networkChainId;
+    // Primary node, the only one transactions are sent to.
     private String nodeUrl;
+    // Additional nodes read-only calls can be routed to.
+    private List<String> nodeUrls = List.of();
+    private Hedging hedging = new Hedging();
+
+    @Data
+    public static class Hedging {
+        // A read is also sent to the second fastest node when the fastest one takes longer than this percentile of its observed latencies.
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(50);
+        // Used until enough latencies have been observed for a node.
+        private Duration defaultDelay = Duration.ofMillis(500);
+    }
 }
@@ -0,0 +1,57 @@
+package com.technest.ethereum.tool.configuration;
+
+import com.technest.ethereum.tool.EthereumToolApplication;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ContextAnnotationAutowireCandidateResolver;
+import org.springframework.context.annotation.Profile;
+import org.springframework.shell.standard.ShellComponent;
+
+import java.lang.reflect.Modifier;
+
+// Fast start for scripted, one-shot invocations. Beans are lazy in this profile (see application-fast-start.yml), but Spring Shell creates every shell
+// component at startup to register its commands, and they'd pull in everything they depend on: Web3j, the CoinGate client, the fee oracle polling the node...
+// So shell components get lazy resolution proxies of their dependencies instead, and those are only created when a command uses them.
+// Spring Boot never makes beans with @Scheduled methods lazy (they'd never be created otherwise), but here they're made lazy anyway: the fee oracle, the
+// confirmation tracker and exchange rates only need to be polled once a command uses them, and they start polling then.
+@Configuration
+@Profile("fast-start")
+public class FastStartConfig {
+
+    @Bean
+    public static BeanFactoryPostProcessor lazyShellComponentDependencies() {
+        return beanFactory -> {
+            ((DefaultListableBeanFactory) beanFactory).setAutowireCandidateResolver(new LazyShellComponentDependenciesResolver());
+
+            for (final var beanName : beanFactory.getBeanDefinitionNames()) {
+                final var beanType = beanFactory.getType(beanName, false);
+                if (beanFactory.getBeanDefinition(beanName) instanceof AbstractBeanDefinition beanDefinition && beanDefinition.getLazyInit() == null
+                        && beanType != null && beanType.getPackageName().startsWith(EthereumToolApplication.class.getPackageName())) {
+                    beanDefinition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    private static final class LazyShellComponentDependenciesResolver extends ContextAnnotationAutowireCandidateResolver {
+
+        @Override
+        protected boolean isLazy(DependencyDescriptor descriptor) {
+            if (super.isLazy(descriptor)) {
+                return true;
+            }
+
+            final var dependencyType = descriptor.getDependencyType();
+            final var declaringClass = descriptor.getMethodParameter() != null ? descriptor.getMethodParameter().getDeclaringClass()
+                    : descriptor.getField() != null ? descriptor.getField().getDeclaringClass() : null;
+            return declaringClass != null && declaringClass.isAnnotationPresent(ShellComponent.class)
+                    && !dependencyType.isPrimitive() && !Modifier.isFinal(dependencyType.getModifiers());
+        }
+
+    }
+
+}
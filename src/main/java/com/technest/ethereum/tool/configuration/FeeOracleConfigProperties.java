@@ -0,0 +1,20 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.fee-oracle")
+public class FeeOracleConfigProperties {
+    private Duration pollInterval = Duration.ofSeconds(2);
+    private int historyBlocks = 5;
+    private List<Double> rewardPercentiles = List.of(25.0, 50.0, 75.0);
+    private double priorityFeePercentile = 50.0;
+    // About 3 block times.
+    private Duration maxAge = Duration.ofSeconds(36);
+}
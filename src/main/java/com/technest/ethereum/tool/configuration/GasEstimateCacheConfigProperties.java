@@ -0,0 +1,18 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.gas-estimate-cache")
+public class GasEstimateCacheConfigProperties {
+    private boolean enabled = true;
+    // How long an estimate is reused for, before a new one is sampled.
+    private Duration ttl = Duration.ofMinutes(4);
+    // Added on top of the sampled estimate, as transfers of other amounts to other recipients of the same class may take slightly more gas.
+    private int safetyMarginPercent = 10;
+}
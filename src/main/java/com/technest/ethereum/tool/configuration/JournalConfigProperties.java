@@ -0,0 +1,14 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.journal")
+public class JournalConfigProperties {
+    private String file;
+    private DataSize initialSize = DataSize.ofMegabytes(16);
+}
@@ -0,0 +1,34 @@
+package com.technest.ethereum.tool.configuration;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // Every timer (JSON-RPC calls, CoinGate requests, shell commands) records its latencies as a histogram, along with the configured percentiles.
+    @Bean
+    public PrometheusMeterRegistry meterRegistry(MetricsConfigProperties properties) {
+        final var meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        final var latencyDistribution = DistributionStatisticConfig.builder()
+                .percentiles(properties.getPercentiles().stream().mapToDouble(Double::doubleValue).toArray())
+                .percentilesHistogram(true)
+                .minimumExpectedValue((double) properties.getMinExpectedLatency().toNanos())
+                .maximumExpectedValue((double) properties.getMaxExpectedLatency().toNanos())
+                .build();
+
+        meterRegistry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                return id.getType() == Meter.Type.TIMER ? latencyDistribution.merge(config) : config;
+            }
+        });
+        return meterRegistry;
+    }
+
+}
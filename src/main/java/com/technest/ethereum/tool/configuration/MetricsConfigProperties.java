@@ -0,0 +1,27 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties("metrics")
+public class MetricsConfigProperties {
+    // Latency percentiles computed for every timer, besides its histogram buckets.
+    private List<Double> percentiles = List.of(0.5, 0.95, 0.99);
+    // Histogram buckets only cover latencies within this range, so there aren't hundreds of them per timer.
+    private Duration minExpectedLatency = Duration.ofMillis(1);
+    private Duration maxExpectedLatency = Duration.ofMinutes(1);
+    private Export export = new Export();
+
+    @Data
+    public static class Export {
+        // Every metric is written in Prometheus text format to this file, when given.
+        private String file;
+        private Duration interval = Duration.ofSeconds(30);
+    }
+}
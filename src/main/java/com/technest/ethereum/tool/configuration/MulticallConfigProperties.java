@@ -0,0 +1,15 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.multicall")
+public class MulticallConfigProperties {
+    // Multicall3 is deployed at the same address in almost every EVM network: https://www.multicall3.com/deployments
+    private String address = "0xcA11bde05977b3631167028862bE2a173976CA11";
+    private int initialChunkSize = 200;
+    private int maxChunkSize = 1000;
+}
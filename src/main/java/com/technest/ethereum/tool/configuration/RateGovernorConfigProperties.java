@@ -0,0 +1,52 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.rate-governor")
+public class RateGovernorConfigProperties {
+    private boolean enabled = true;
+    // Rates are in cost units (e.g. provider compute units) per second.
+    private double initialRate = 300;
+    private double minRate = 10;
+    private double maxRate = 10_000;
+    // Added to the rate every adjustInterval that requests had to wait for it, while the node keeps up.
+    private double rateIncrease = 25;
+    private int initialConcurrency = 16;
+    private int minConcurrency = 1;
+    private int maxConcurrency = 128;
+    // Rate and concurrency are multiplied by this on HTTP 429, and concurrency shrinks by 10% when requests take longer than latencyThreshold.
+    private double decreaseFactor = 0.5;
+    private Duration latencyThreshold = Duration.ofSeconds(2);
+    private Duration adjustInterval = Duration.ofSeconds(1);
+    // Throttled requests are retried after the Retry-After the node asks for, or an exponential backoff from minBackoff when it doesn't, plus jitter.
+    private int maxRetries = 3;
+    private Duration minBackoff = Duration.ofMillis(500);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+    private double jitter = 0.2;
+    private int defaultMethodCost = 20;
+    // Cost of each JSON-RPC method, Alchemy compute units by default. A batch costs the sum of its calls.
+    private Map<String, Integer> methodCosts = new HashMap<>(Map.ofEntries(
+            Map.entry("eth_blockNumber", 10),
+            Map.entry("eth_chainId", 0),
+            Map.entry("eth_call", 26),
+            Map.entry("eth_estimateGas", 87),
+            Map.entry("eth_feeHistory", 10),
+            Map.entry("eth_gasPrice", 19),
+            Map.entry("eth_getBalance", 19),
+            Map.entry("eth_getBlockByNumber", 16),
+            Map.entry("eth_getCode", 26),
+            Map.entry("eth_getLogs", 75),
+            Map.entry("eth_getTransactionCount", 26),
+            Map.entry("eth_getTransactionReceipt", 15),
+            Map.entry("eth_maxPriorityFeePerGas", 10),
+            Map.entry("eth_sendRawTransaction", 250)
+    ));
+}
@@ -0,0 +1,18 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.read-coalescing")
+public class ReadCoalescingConfigProperties {
+    private boolean enabled = true;
+    // Reads at the latest block are pinned to the latest block number seen, which is asked to the node again once it's older than this.
+    private Duration headTtl = Duration.ofSeconds(1);
+    // Reads pinned to a block are cached until a newer block is seen. Once there are this many, further ones are only coalesced.
+    private int maxEntries = 100_000;
+}
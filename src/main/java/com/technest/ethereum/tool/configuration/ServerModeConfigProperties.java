@@ -0,0 +1,14 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.server")
+public class ServerModeConfigProperties {
+    private int maxConcurrentRequests = 256;
+    private int bulkConcurrency = 16;
+    private int balanceBatchSize = 100;
+}
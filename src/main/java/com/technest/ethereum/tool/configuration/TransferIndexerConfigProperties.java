@@ -0,0 +1,33 @@
+package com.technest.ethereum.tool.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties("ethereum.transfer-indexer")
+public class TransferIndexerConfigProperties {
+    // Indexes new blocks in background. Catching up can still be run on demand when disabled.
+    private boolean enabled = false;
+    private Duration pollInterval = Duration.ofSeconds(12);
+    // ERC-20 token contracts whose Transfer events are indexed.
+    private List<String> tokens = List.of();
+    // Addresses watched from startup, one per line (or index,address lines, as written by deriveDepositAddresses).
+    private String watchedAddressesFile;
+    private String checkpointFile = "./transfer-indexer-checkpoint.json";
+    private String paymentsFile = "./incoming-payments.csv";
+    // First block to index when there's no checkpoint. Indexing starts at the latest safe block when not set.
+    private BigInteger startBlock;
+    // Blocks behind the latest one that can still be reorganized, they are only indexed once they are this deep.
+    private int reorgDepth = 12;
+    private int initialRangeSize = 1000;
+    private int maxRangeSize = 10000;
+    private int parallelRanges = 4;
+    // Range size grows while ranges return fewer than half of these logs.
+    private int targetLogsPerRange = 1000;
+}
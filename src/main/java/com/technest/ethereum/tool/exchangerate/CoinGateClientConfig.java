@@ -1,9 +1,12 @@
 package com.technest.ethereum.tool.exchangerate;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -15,11 +18,16 @@ import reactor.core.publisher.Mono;
 @Configuration
 public class CoinGateClientConfig {
 
+    // Set by WebClient when the request URI comes from a template, as HTTP interface clients do.
+    private static final String URI_TEMPLATE_ATTRIBUTE = WebClient.class.getName() + ".uriTemplate";
+
     @Bean
-    public CoinGateClient coinGateClient(@Value("${coingate-api.url}") String coinGateApiUrl) {
+    public CoinGateClient coinGateClient(@Value("${coingate-api.url}") String coinGateApiUrl, MeterRegistry meterRegistry) {
+        // Metrics filter goes after the error handling one, so it sees actual response statuses.
         WebClient webClient = WebClient.builder()
                 .baseUrl(coinGateApiUrl)
                 .filter(errorHandlingFilter())
+                .filter(metricsFilter(meterRegistry))
                 .build();
 
         return HttpServiceProxyFactory
@@ -28,6 +36,19 @@ public class CoinGateClientConfig {
                 .createClient(CoinGateClient.class);
     }
 
+    // Times every request (coingate.requests), tagged by HTTP method, URI template, status and outcome: success, error (non 2xx status), failure (no response
+    // at all) or cancelled (e.g. it timed out).
+    public static ExchangeFilterFunction metricsFilter(MeterRegistry meterRegistry) {
+        return (request, next) -> {
+            final var sample = Timer.start(meterRegistry);
+            return next.exchange(request)
+                    .doOnSuccess(response -> sample.stop(requestTimer(meterRegistry, request, String.valueOf(response.statusCode().value()),
+                            response.statusCode().is2xxSuccessful() ? "success" : "error")))
+                    .doOnError(e -> sample.stop(requestTimer(meterRegistry, request, "none", "failure")))
+                    .doOnCancel(() -> sample.stop(requestTimer(meterRegistry, request, "none", "cancelled")));
+        };
+    }
+
     public static ExchangeFilterFunction errorHandlingFilter() {
         return ExchangeFilterFunction.ofResponseProcessor(clientResponse -> {
             if (!clientResponse.statusCode().is2xxSuccessful()) {
@@ -39,4 +60,14 @@ public class CoinGateClientConfig {
         });
     }
 
+    private static Timer requestTimer(MeterRegistry meterRegistry, ClientRequest request, String status, String outcome) {
+        return Timer.builder("coingate.requests")
+                .description("Requests sent to CoinGate API")
+                .tag("method", request.method().name())
+                .tag("uri", request.attribute(URI_TEMPLATE_ATTRIBUTE).map(String::valueOf).orElseGet(() -> request.url().getPath()))
+                .tag("status", status)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
 }
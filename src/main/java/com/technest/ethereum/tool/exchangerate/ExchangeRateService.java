@@ -1,15 +1,23 @@
 package com.technest.ethereum.tool.exchangerate;
 
+import io.vavr.control.Option;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+// Conversions never wait for CoinGate: they use the latest exchange rates snapshot, which starts with the configured fallback rates and is replaced in
+// background every time rates are refreshed. If a refresh fails, the previous (stale) rates keep being served.
 @RequiredArgsConstructor
 @Service
 @Log4j2
@@ -19,44 +27,92 @@ public class ExchangeRateService {
     private BigDecimal btcUsdExchangeRateFallback;
     @Value("${exchange-rate.eth-to-usd:1922.51}")
     private BigDecimal ethUsdExchangeRateFallback;
-    private final Integer DECIMAL_POSITIONS = 9;
+    @Value("${exchange-rate.timeout:PT10S}")
+    private Duration exchangeRateTimeout;
     private final String USD_SYMBOL = "USD";
     private final String BITCOIN_SYMBOL = "BTC";
     private final String ETHER_SYMBOL = "ETH";
     private final CoinGateClient coinGateClient;
-    private BigDecimal btcUsdExchangeRate;
-    private BigDecimal ethUsdExchangeRate;
+    private final AtomicReference<UnitConverter> unitConverter = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
 
     @PostConstruct
-    private void retrieveExchangeRates() {
+    void initExchangeRates() {
+        unitConverter.set(new UnitConverter(new ExchangeRates(btcUsdExchangeRateFallback, ethUsdExchangeRateFallback, Instant.now(), true)));
+        refreshExchangeRates();
+    }
+
+    @Scheduled(initialDelayString = "${exchange-rate.refresh-interval:PT5M}", fixedDelayString = "${exchange-rate.refresh-interval:PT5M}")
+    public void refreshExchangeRates() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
         log.info("Loading exchange rates...");
-        btcUsdExchangeRate = coinGateClient.getExchangeRateFor(BITCOIN_SYMBOL, USD_SYMBOL).orElseGet(() -> btcUsdExchangeRateFallback);
-        ethUsdExchangeRate = coinGateClient.getExchangeRateFor(ETHER_SYMBOL, USD_SYMBOL).orElseGet(() -> ethUsdExchangeRateFallback);
-        log.info("Exchange rates loaded: btcToUsd={} ethToUsd={}", btcUsdExchangeRate, ethUsdExchangeRate);
+        // Both pairs are requested in parallel.
+        Mono.zip(retrieveExchangeRateFor(BITCOIN_SYMBOL), retrieveExchangeRateFor(ETHER_SYMBOL))
+                .doFinally(signal -> refreshing.set(false))
+                .subscribe(rates -> updateExchangeRates(rates.getT1(), rates.getT2()));
+    }
+
+    public ExchangeRates getExchangeRates() {
+        return unitConverter.get().getExchangeRates();
+    }
+
+    public Duration getExchangeRatesAge() {
+        return getExchangeRates().age();
     }
 
     public BigDecimal fromSatoshisToUsd(Long satoshis) {
-        return BigDecimal.valueOf(satoshis).multiply(btcUsdExchangeRate).divide(new BigDecimal("100000000.0"), DECIMAL_POSITIONS, RoundingMode.HALF_UP);
+        return unitConverter.get().fromSatoshisToUsd(satoshis);
     }
 
     public Long fromUsdToSatoshis(BigDecimal usdAmount) {
-        return usdAmount.multiply(new BigDecimal("100000000.0")).divide(btcUsdExchangeRate, DECIMAL_POSITIONS, RoundingMode.HALF_UP).longValue();
+        return unitConverter.get().fromUsdToSatoshis(usdAmount);
     }
 
     public BigInteger fromUsdtoWeis(BigDecimal usdAmount) {
-        return usdAmount.multiply(new BigDecimal("1000000000000000000.0")).divide(ethUsdExchangeRate, DECIMAL_POSITIONS, RoundingMode.HALF_UP).toBigInteger();
+        return unitConverter.get().fromUsdToWeis(usdAmount);
     }
 
     public BigDecimal fromWeisToUsd(BigInteger weis) {
-        return new BigDecimal(weis).multiply(ethUsdExchangeRate).divide(new BigDecimal("1000000000000000000.0"), DECIMAL_POSITIONS, RoundingMode.HALF_UP);
+        return unitConverter.get().fromWeisToUsd(weis);
     }
 
     public BigInteger fromUsdtoGweis(BigDecimal usdAmount) {
-        return usdAmount.multiply(new BigDecimal("1000000000.0")).divide(ethUsdExchangeRate, DECIMAL_POSITIONS, RoundingMode.HALF_UP).toBigInteger();
+        return unitConverter.get().fromUsdToGweis(usdAmount);
     }
 
     public BigDecimal fromGweisToUsd(BigInteger gweis) {
-        return new BigDecimal(gweis).multiply(ethUsdExchangeRate).divide(new BigDecimal("1000000000.0"), DECIMAL_POSITIONS, RoundingMode.HALF_UP);
+        return unitConverter.get().fromGweisToUsd(gweis);
+    }
+
+    // An empty option means the rate couldn't be retrieved, so the current one must be kept.
+    private Mono<Option<BigDecimal>> retrieveExchangeRateFor(String currencySymbol) {
+        return coinGateClient.getExchangeRateFor(currencySymbol, USD_SYMBOL)
+                .timeout(exchangeRateTimeout)
+                .map(Option::of)
+                .defaultIfEmpty(Option.none())
+                .onErrorResume(e -> {
+                    log.warn("Couldn't retrieve {} to {} exchange rate: {}", currencySymbol, USD_SYMBOL, e.getMessage());
+                    return Mono.just(Option.none());
+                });
+    }
+
+    private void updateExchangeRates(Option<BigDecimal> maybeBtcUsdExchangeRate, Option<BigDecimal> maybeEthUsdExchangeRate) {
+        if (maybeBtcUsdExchangeRate.isEmpty() && maybeEthUsdExchangeRate.isEmpty()) {
+            log.warn("Exchange rates couldn't be refreshed, keeping the ones from {} s ago", getExchangeRatesAge().toSeconds());
+            return;
+        }
+
+        // Conversion factors are computed once per snapshot, not on every conversion.
+        final var newExchangeRates = unitConverter.updateAndGet(current -> new UnitConverter(new ExchangeRates(
+                maybeBtcUsdExchangeRate.getOrElse(current.getExchangeRates().btcToUsd()),
+                maybeEthUsdExchangeRate.getOrElse(current.getExchangeRates().ethToUsd()),
+                Instant.now(),
+                current.getExchangeRates().fallback() && (maybeBtcUsdExchangeRate.isEmpty() || maybeEthUsdExchangeRate.isEmpty())
+        ))).getExchangeRates();
+        log.info("Exchange rates loaded: btcToUsd={} ethToUsd={}", newExchangeRates.btcToUsd(), newExchangeRates.ethToUsd());
     }
 
 }
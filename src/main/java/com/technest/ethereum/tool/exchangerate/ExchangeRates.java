@@ -0,0 +1,14 @@
+package com.technest.ethereum.tool.exchangerate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+// fallback is true while rates are still the configured ones, i.e. they were never retrieved from CoinGate.
+public record ExchangeRates(BigDecimal btcToUsd, BigDecimal ethToUsd, Instant retrievedAt, boolean fallback) {
+
+    public Duration age() {
+        return Duration.between(retrievedAt, Instant.now());
+    }
+
+}
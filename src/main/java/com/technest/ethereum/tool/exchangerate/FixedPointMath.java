@@ -0,0 +1,120 @@
+package com.technest.ethereum.tool.exchangerate;
+
+// 64/128-bit integer arithmetic used by UnitConverter. Every method works with non-negative values only and returns NOT_REPRESENTABLE when the result
+// doesn't fit in a long, so callers can fall back to BigInteger/BigDecimal arithmetic.
+final class FixedPointMath {
+
+    static final long NOT_REPRESENTABLE = -1;
+
+    private static final long TWO_32 = 1L << 32;
+    private static final long LOW_32_MASK = TWO_32 - 1;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPointMath() {
+    }
+
+    // Returns 10^exponent, or NOT_REPRESENTABLE if it's out of the long range.
+    static long powerOfTen(int exponent) {
+        return exponent >= 0 && exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : NOT_REPRESENTABLE;
+    }
+
+    // Returns (a * b) / divisor rounded HALF_UP.
+    static long multiplyDivideHalfUp(long a, long b, long divisor) {
+        final var high = Math.multiplyHigh(a, b);
+        final var low = a * b;
+        if (high >= divisor) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final var quotient = divideUnsigned(high, low, divisor);
+        if (quotient < 0) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final var remainder = low - quotient * divisor;
+        // Compared this way to avoid overflowing 2 * remainder.
+        final var roundedQuotient = Long.compareUnsigned(remainder, divisor - remainder) >= 0 ? quotient + 1 : quotient;
+        return roundedQuotient >= 0 ? roundedQuotient : NOT_REPRESENTABLE;
+    }
+
+    // Returns floor((a * 10^exponent) / divisor) and, in remainderHolder[0], the remainder of that division. Exponent can be up to 36.
+    static long multiplyByPowerOfTenDivide(long a, int exponent, long divisor, long[] remainderHolder) {
+        final var lowPowerOfTen = powerOfTen(Math.min(exponent, 18));
+        final var highPowerOfTen = powerOfTen(Math.max(exponent - 18, 0));
+        if (lowPowerOfTen == NOT_REPRESENTABLE || highPowerOfTen == NOT_REPRESENTABLE) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final long factor;
+        try {
+            factor = Math.multiplyExact(a, highPowerOfTen);
+        } catch (ArithmeticException e) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final var high = Math.multiplyHigh(factor, lowPowerOfTen);
+        final var low = factor * lowPowerOfTen;
+        if (high >= divisor) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final var quotient = divideUnsigned(high, low, divisor);
+        remainderHolder[0] = low - quotient * divisor;
+        return quotient >= 0 ? quotient : NOT_REPRESENTABLE;
+    }
+
+    // Compares a * b with c * d, all of them being non-negative.
+    static int compareProducts(long a, long b, long c, long d) {
+        final var highComparison = Long.compare(Math.multiplyHigh(a, b), Math.multiplyHigh(c, d));
+        return highComparison != 0 ? highComparison : Long.compareUnsigned(a * b, c * d);
+    }
+
+    // Divides the unsigned 128-bit value high:low by divisor, which must be greater than high so that the quotient fits in 64 bits.
+    // This is the classic two-digits-by-one division (Knuth's algorithm D, as in Hacker's Delight "divlu") using 32-bit digits.
+    private static long divideUnsigned(long high, long low, long divisor) {
+        if (high == 0 && low >= 0) {
+            return low / divisor;
+        }
+
+        final var shift = Long.numberOfLeadingZeros(divisor);
+        final var normalizedDivisor = divisor << shift;
+        final var divisorHigh = normalizedDivisor >>> 32;
+        final var divisorLow = normalizedDivisor & LOW_32_MASK;
+
+        final var numerator32 = shift == 0 ? high : (high << shift) | (low >>> (64 - shift));
+        final var numerator10 = low << shift;
+        final var numerator1 = numerator10 >>> 32;
+        final var numerator0 = numerator10 & LOW_32_MASK;
+
+        var quotient1 = Long.divideUnsigned(numerator32, divisorHigh);
+        var remainderHat = numerator32 - quotient1 * divisorHigh;
+        while (Long.compareUnsigned(quotient1, TWO_32) >= 0 || Long.compareUnsigned(quotient1 * divisorLow, (remainderHat << 32) | numerator1) > 0) {
+            quotient1--;
+            remainderHat += divisorHigh;
+            if (Long.compareUnsigned(remainderHat, TWO_32) >= 0) {
+                break;
+            }
+        }
+
+        final var numerator21 = (numerator32 << 32) + numerator1 - quotient1 * normalizedDivisor;
+        var quotient0 = Long.divideUnsigned(numerator21, divisorHigh);
+        remainderHat = numerator21 - quotient0 * divisorHigh;
+        while (Long.compareUnsigned(quotient0, TWO_32) >= 0 || Long.compareUnsigned(quotient0 * divisorLow, (remainderHat << 32) | numerator0) > 0) {
+            quotient0--;
+            remainderHat += divisorHigh;
+            if (Long.compareUnsigned(remainderHat, TWO_32) >= 0) {
+                break;
+            }
+        }
+
+        return (quotient1 << 32) | quotient0;
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.technest.ethereum.tool.exchangerate;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+import static com.technest.ethereum.tool.exchangerate.FixedPointMath.NOT_REPRESENTABLE;
+
+// Converts amounts between USD and satoshis, weis and gweis for a given exchange rates snapshot.
+// Every conversion gives exactly the same result as doing it with BigDecimal, rounding HALF_UP to 9 decimal positions. Exchange rates are split into their
+// unscaled value and scale once per snapshot, so whenever the values involved fit in 64/128-bit integer arithmetic the conversion is done without any
+// intermediate BigDecimal. Otherwise, it falls back to BigDecimal.
+final class UnitConverter {
+
+    private static final int DECIMAL_POSITIONS = 9;
+    private static final BigDecimal SATOSHIS_PER_BITCOIN = new BigDecimal("100000000.0");
+    private static final BigDecimal WEIS_PER_ETHER = new BigDecimal("1000000000000000000.0");
+    private static final BigDecimal GWEIS_PER_ETHER = new BigDecimal("1000000000.0");
+    private static final int SATOSHIS_PER_BITCOIN_EXPONENT = 8;
+    private static final int WEIS_PER_ETHER_EXPONENT = 18;
+    private static final int GWEIS_PER_ETHER_EXPONENT = 9;
+    private static final long ONE_BILLION = 1_000_000_000L;
+
+    @Getter
+    private final ExchangeRates exchangeRates;
+    private final Rate btcToUsd;
+    private final Rate ethToUsd;
+    private final ToUsdFactor satoshisToUsd;
+    private final ToUsdFactor weisToUsd;
+    private final ToUsdFactor gweisToUsd;
+
+    UnitConverter(ExchangeRates exchangeRates) {
+        this.exchangeRates = exchangeRates;
+        this.btcToUsd = new Rate(exchangeRates.btcToUsd());
+        this.ethToUsd = new Rate(exchangeRates.ethToUsd());
+        this.satoshisToUsd = ToUsdFactor.of(btcToUsd, SATOSHIS_PER_BITCOIN_EXPONENT);
+        this.weisToUsd = ToUsdFactor.of(ethToUsd, WEIS_PER_ETHER_EXPONENT);
+        this.gweisToUsd = ToUsdFactor.of(ethToUsd, GWEIS_PER_ETHER_EXPONENT);
+    }
+
+    BigDecimal fromSatoshisToUsd(long satoshis) {
+        final var usd = toUsd(satoshis, satoshisToUsd);
+        return usd != null ?
+                usd :
+                BigDecimal.valueOf(satoshis).multiply(btcToUsd.value).divide(SATOSHIS_PER_BITCOIN, DECIMAL_POSITIONS, RoundingMode.HALF_UP);
+    }
+
+    long fromUsdToSatoshis(BigDecimal usdAmount) {
+        final var satoshis = fromUsd(usdAmount, btcToUsd, SATOSHIS_PER_BITCOIN_EXPONENT);
+        return satoshis != NOT_REPRESENTABLE ?
+                satoshis :
+                usdAmount.multiply(SATOSHIS_PER_BITCOIN).divide(btcToUsd.value, DECIMAL_POSITIONS, RoundingMode.HALF_UP).longValue();
+    }
+
+    BigInteger fromUsdToWeis(BigDecimal usdAmount) {
+        final var weis = fromUsd(usdAmount, ethToUsd, WEIS_PER_ETHER_EXPONENT);
+        return weis != NOT_REPRESENTABLE ?
+                BigInteger.valueOf(weis) :
+                usdAmount.multiply(WEIS_PER_ETHER).divide(ethToUsd.value, DECIMAL_POSITIONS, RoundingMode.HALF_UP).toBigInteger();
+    }
+
+    BigDecimal fromWeisToUsd(BigInteger weis) {
+        final var usd = weis.bitLength() < Long.SIZE ? toUsd(weis.longValue(), weisToUsd) : null;
+        return usd != null ?
+                usd :
+                new BigDecimal(weis).multiply(ethToUsd.value).divide(WEIS_PER_ETHER, DECIMAL_POSITIONS, RoundingMode.HALF_UP);
+    }
+
+    BigInteger fromUsdToGweis(BigDecimal usdAmount) {
+        final var gweis = fromUsd(usdAmount, ethToUsd, GWEIS_PER_ETHER_EXPONENT);
+        return gweis != NOT_REPRESENTABLE ?
+                BigInteger.valueOf(gweis) :
+                usdAmount.multiply(GWEIS_PER_ETHER).divide(ethToUsd.value, DECIMAL_POSITIONS, RoundingMode.HALF_UP).toBigInteger();
+    }
+
+    BigDecimal fromGweisToUsd(BigInteger gweis) {
+        final var usd = gweis.bitLength() < Long.SIZE ? toUsd(gweis.longValue(), gweisToUsd) : null;
+        return usd != null ?
+                usd :
+                new BigDecimal(gweis).multiply(ethToUsd.value).divide(GWEIS_PER_ETHER, DECIMAL_POSITIONS, RoundingMode.HALF_UP);
+    }
+
+    // Returns null when values don't fit in integer arithmetic.
+    private static BigDecimal toUsd(long units, ToUsdFactor factor) {
+        if (units < 0 || factor.numerator == NOT_REPRESENTABLE) {
+            return null;
+        }
+
+        final var usdInNanos = FixedPointMath.multiplyDivideHalfUp(units, factor.numerator, factor.denominator);
+        return usdInNanos != NOT_REPRESENTABLE ? BigDecimal.valueOf(usdInNanos, DECIMAL_POSITIONS) : null;
+    }
+
+    // BigDecimal conversion computes round(usd * 10^unitsPerCoinExponent / rate) with 9 decimal positions and then drops the decimals. Being
+    // a = unscaledUsd * 10^(unitsPerCoinExponent + rateScale - usdScale), q = a / unscaledRate and r = a % unscaledRate, that's q, plus one when the
+    // decimals r / unscaledRate round up to the next unit, i.e. when 2 * r * 10^9 >= (2 * 10^9 - 1) * unscaledRate.
+    private static long fromUsd(BigDecimal usdAmount, Rate rate, int unitsPerCoinExponent) {
+        if (usdAmount.signum() < 0 || rate.unscaledValue == NOT_REPRESENTABLE || usdAmount.precision() > 18) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final var exponent = unitsPerCoinExponent + rate.scale - usdAmount.scale();
+        if (exponent < 0) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final var remainder = new long[1];
+        final var quotient = FixedPointMath.multiplyByPowerOfTenDivide(usdAmount.unscaledValue().longValue(), exponent, rate.unscaledValue, remainder);
+        if (quotient == NOT_REPRESENTABLE) {
+            return NOT_REPRESENTABLE;
+        }
+
+        final var roundsUp = FixedPointMath.compareProducts(remainder[0], 2 * ONE_BILLION, rate.unscaledValue, 2 * ONE_BILLION - 1) >= 0;
+        return roundsUp ? (quotient + 1 >= 0 ? quotient + 1 : NOT_REPRESENTABLE) : quotient;
+    }
+
+    // usd = units * rate / 10^unitsPerCoinExponent so, with 9 decimal positions, usd * 10^9 = round(units * numerator / denominator), where numerator and
+    // denominator are the unscaled rate and the power of ten left after simplifying 10^(rateScale + unitsPerCoinExponent - 9).
+    private record ToUsdFactor(long numerator, long denominator) {
+
+        private static ToUsdFactor of(Rate rate, int unitsPerCoinExponent) {
+            final var exponent = rate.scale + unitsPerCoinExponent - DECIMAL_POSITIONS;
+            final var powerOfTen = FixedPointMath.powerOfTen(Math.abs(exponent));
+            if (rate.unscaledValue == NOT_REPRESENTABLE || powerOfTen == NOT_REPRESENTABLE) {
+                return new ToUsdFactor(NOT_REPRESENTABLE, 1);
+            } else if (exponent >= 0) {
+                return new ToUsdFactor(rate.unscaledValue, powerOfTen);
+            } else {
+                final var numerator = Math.multiplyHigh(rate.unscaledValue, powerOfTen) == 0 && rate.unscaledValue * powerOfTen > 0 ?
+                        rate.unscaledValue * powerOfTen :
+                        NOT_REPRESENTABLE;
+                return new ToUsdFactor(numerator, 1);
+            }
+        }
+
+    }
+
+    private static final class Rate {
+        private final BigDecimal value;
+        private final long unscaledValue;
+        private final int scale;
+
+        private Rate(BigDecimal value) {
+            this.value = value;
+            // Trailing zeros are removed to keep the unscaled value and the powers of ten involved as small as possible.
+            final var strippedValue = value.stripTrailingZeros();
+            final var normalizedValue = strippedValue.scale() < 0 ? strippedValue.setScale(0) : strippedValue;
+            final var representable = normalizedValue.signum() > 0 && normalizedValue.unscaledValue().bitLength() < Long.SIZE;
+            this.unscaledValue = representable ? normalizedValue.unscaledValue().longValue() : NOT_REPRESENTABLE;
+            this.scale = representable ? normalizedValue.scale() : 0;
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.technest.ethereum.tool.journal;
+
+// Steps of a transaction life, in the order they happen. Codes are persisted, so they must never change.
+public enum JournalRecordType {
+    BUILT(1),
+    SIGNED(2),
+    BROADCAST(3),
+    BROADCAST_FAILED(4),
+    CONFIRMED(5),
+    REVERTED(6);
+
+    private final byte code;
+
+    JournalRecordType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public static JournalRecordType fromCode(byte code) {
+        for (final var type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown journal record type: " + code);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.technest.ethereum.tool.journal;
+
+import java.math.BigInteger;
+import java.time.Instant;
+
+// Latest known state of a transaction, as rebuilt from the journal. Hashes and raw transactions are 0x prefixed hex strings, null until known.
+public record JournaledTransaction(String sender, BigInteger nonce, JournalRecordType status, String hashToSign, String unsignedRawTransaction,
+                                   String transactionHash, String signedRawTransaction, BigInteger blockNumber, String error, Instant updatedAt) {
+}
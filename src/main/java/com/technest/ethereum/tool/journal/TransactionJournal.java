@@ -0,0 +1,253 @@
+package com.technest.ethereum.tool.journal;
+
+import com.technest.ethereum.tool.configuration.JournalConfigProperties;
+import io.vavr.control.Option;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// Append-only log of every transaction built, signed, broadcast and confirmed, kept in a memory-mapped file, and replayed on startup to rebuild an index by
+// hash (hash to sign or transaction hash) and by sender + nonce.
+// Appends aren't forced to disk (only on close): records written to the mapped file are in the OS page cache, so they survive the process crashing or being
+// killed, but not a power loss or an OS crash, which may lose the latest records.
+// Every record is: body length (int), CRC-32 of the body (int) and the body itself: type (byte), timestamp in millis (long), sender (20 bytes), nonce (long),
+// hash (32 bytes), data length (int) and data. The length is written last, so a record is never seen before it's complete, and a torn record (e.g. the
+// machine went down while writing it) fails its CRC check and is discarded on replay, along with anything after it.
+// Journaling is disabled unless a file is configured.
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class TransactionJournal {
+
+    private static final int HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int FIXED_BODY_LENGTH = 1 + Long.BYTES + 20 + Long.BYTES + 32 + Integer.BYTES;
+    private static final int MAX_DATA_LENGTH = 1 << 20;
+
+    private final JournalConfigProperties properties;
+    private final Map<String, JournaledTransaction> transactionsBySenderAndNonce = new ConcurrentHashMap<>();
+    private final Map<String, String> senderAndNonceByHash = new ConcurrentHashMap<>();
+    private final Map<String, Long> nextNonces = new ConcurrentHashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private volatile long recordCount;
+
+    @PostConstruct
+    synchronized void open() {
+        Option.of(properties.getFile()).map(Path::of).forEach(file -> {
+            final var startTime = System.nanoTime();
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                map(Math.max(channel.size(), properties.getInitialSize().toBytes()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't open transaction journal " + file, e);
+            }
+            replay();
+            log.info("Replayed {} journal records ({} transactions) from {} in {} ms", recordCount, transactionsBySenderAndNonce.size(), file,
+                    (System.nanoTime() - startTime) / 1_000_000);
+        });
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    public void recordBuilt(String sender, BigInteger nonce, byte[] hashToSign, byte[] unsignedTransaction) {
+        append(JournalRecordType.BUILT, sender, nonce, hashToSign, unsignedTransaction);
+    }
+
+    public void recordSigned(String sender, BigInteger nonce, byte[] signedTransaction) {
+        append(JournalRecordType.SIGNED, sender, nonce, Hash.sha3(signedTransaction), signedTransaction);
+    }
+
+    public void recordBroadcast(String sender, BigInteger nonce, String transactionHash, Option<String> error) {
+        append(error.isDefined() ? JournalRecordType.BROADCAST_FAILED : JournalRecordType.BROADCAST, sender, nonce, Numeric.hexStringToByteArray(transactionHash),
+                error.map(message -> message.getBytes(StandardCharsets.UTF_8)).getOrElse(new byte[0]));
+    }
+
+    public void recordReceipt(String sender, BigInteger nonce, String transactionHash, BigInteger blockNumber, boolean succeeded) {
+        append(succeeded ? JournalRecordType.CONFIRMED : JournalRecordType.REVERTED, sender, nonce, Numeric.hexStringToByteArray(transactionHash),
+                Numeric.toBytesPadded(blockNumber, Long.BYTES));
+    }
+
+    // Looks a transaction up by its hash to sign or its transaction hash.
+    public Option<JournaledTransaction> findByHash(String hash) {
+        return Option.of(senderAndNonceByHash.get(Numeric.prependHexPrefix(hash.toLowerCase(Locale.ROOT)))).map(transactionsBySenderAndNonce::get);
+    }
+
+    public Option<JournaledTransaction> findBySenderAndNonce(String sender, BigInteger nonce) {
+        return Option.of(transactionsBySenderAndNonce.get(keyFor(sender, nonce.longValueExact())));
+    }
+
+    // Nonce following the highest one the sender has broadcast or got mined, if any. Nonces of transactions only built or signed, or whose broadcast failed,
+    // don't count, as they may never reach the node.
+    public Option<BigInteger> getNextNonce(String sender) {
+        return Option.of(nextNonces.get(sender.toLowerCase(Locale.ROOT))).map(BigInteger::valueOf);
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getTransactionCount() {
+        return transactionsBySenderAndNonce.size();
+    }
+
+    private synchronized void append(JournalRecordType type, String sender, BigInteger nonce, byte[] hash, byte[] data) {
+        if (channel == null) {
+            return;
+        }
+        checkArgument(hash.length == 32, "Invalid hash length: " + hash.length);
+        checkArgument(data.length <= MAX_DATA_LENGTH, "Journal record too big: " + data.length);
+
+        final var timestamp = Instant.now();
+        final var senderBytes = Numeric.hexStringToByteArray(sender);
+        checkArgument(senderBytes.length == 20, "Invalid sender address: " + sender);
+        final var bodyLength = FIXED_BODY_LENGTH + data.length;
+        ensureCapacity(HEADER_LENGTH + bodyLength);
+
+        final var body = buffer.slice(position + HEADER_LENGTH, bodyLength);
+        body.put(type.getCode())
+                .putLong(timestamp.toEpochMilli())
+                .put(senderBytes)
+                .putLong(nonce.longValueExact())
+                .put(hash)
+                .putInt(data.length)
+                .put(data);
+        buffer.putInt(position + Integer.BYTES, (int) crcOf(buffer.slice(position + HEADER_LENGTH, bodyLength)));
+        buffer.putInt(position, bodyLength);
+        position += HEADER_LENGTH + bodyLength;
+        recordCount++;
+
+        apply(type, timestamp, Numeric.toHexString(senderBytes), nonce.longValueExact(), hash, data);
+    }
+
+    private void replay() {
+        while (position + HEADER_LENGTH <= buffer.capacity()) {
+            final var bodyLength = buffer.getInt(position);
+            if (bodyLength == 0) {
+                return;
+            }
+
+            final var validLength = bodyLength >= FIXED_BODY_LENGTH && bodyLength <= FIXED_BODY_LENGTH + MAX_DATA_LENGTH
+                    && position + HEADER_LENGTH + bodyLength <= buffer.capacity();
+            if (!validLength || (int) crcOf(buffer.slice(position + HEADER_LENGTH, bodyLength)) != buffer.getInt(position + Integer.BYTES)) {
+                log.warn("Discarding torn transaction journal record at offset {}, and anything after it", position);
+                discardFrom(position);
+                return;
+            }
+
+            final var body = buffer.slice(position + HEADER_LENGTH, bodyLength);
+            final var type = JournalRecordType.fromCode(body.get());
+            final var timestamp = Instant.ofEpochMilli(body.getLong());
+            final var sender = new byte[20];
+            body.get(sender);
+            final var nonce = body.getLong();
+            final var hash = new byte[32];
+            body.get(hash);
+            final var data = new byte[body.getInt()];
+            body.get(data);
+
+            apply(type, timestamp, Numeric.toHexString(sender), nonce, hash, data);
+            position += HEADER_LENGTH + bodyLength;
+            recordCount++;
+        }
+    }
+
+    private void apply(JournalRecordType type, Instant timestamp, String sender, long nonce, byte[] hash, byte[] data) {
+        final var key = keyFor(sender, nonce);
+        final var hashInHex = Numeric.toHexString(hash);
+        final var previous = Option.of(transactionsBySenderAndNonce.get(key))
+                .getOrElse(() -> new JournaledTransaction(sender, BigInteger.valueOf(nonce), type, null, null, null, null, null, null, timestamp));
+
+        final var updated = switch (type) {
+            case BUILT -> new JournaledTransaction(sender, previous.nonce(), type, hashInHex, Numeric.toHexString(data), null, null, null, null, timestamp);
+            case SIGNED -> new JournaledTransaction(sender, previous.nonce(), type, previous.hashToSign(), previous.unsignedRawTransaction(), hashInHex,
+                    Numeric.toHexString(data), null, null, timestamp);
+            case BROADCAST, BROADCAST_FAILED -> new JournaledTransaction(sender, previous.nonce(), type, previous.hashToSign(), previous.unsignedRawTransaction(),
+                    hashInHex, previous.signedRawTransaction(), null, type == JournalRecordType.BROADCAST_FAILED ? new String(data, StandardCharsets.UTF_8) : null,
+                    timestamp);
+            case CONFIRMED, REVERTED -> new JournaledTransaction(sender, previous.nonce(), type, previous.hashToSign(), previous.unsignedRawTransaction(),
+                    hashInHex, previous.signedRawTransaction(), new BigInteger(1, data), null, timestamp);
+        };
+
+        transactionsBySenderAndNonce.put(key, updated);
+        // A transaction rebuilt or signed again for the same sender and nonce replaces the previous one, whose hashes mustn't find the new one.
+        removeHash(previous.hashToSign(), updated.hashToSign(), key);
+        removeHash(previous.transactionHash(), updated.transactionHash(), key);
+        senderAndNonceByHash.put(hashInHex, key);
+        // Mined transactions take their nonce even if they reverted.
+        if (type == JournalRecordType.BROADCAST || type == JournalRecordType.CONFIRMED || type == JournalRecordType.REVERTED) {
+            nextNonces.merge(sender, nonce + 1, Math::max);
+        }
+    }
+
+    private void removeHash(String previousHash, String currentHash, String key) {
+        if (previousHash != null && !previousHash.equals(currentHash)) {
+            senderAndNonceByHash.remove(previousHash, key);
+        }
+    }
+
+    private void ensureCapacity(int recordLength) {
+        if (position + recordLength > buffer.capacity()) {
+            try {
+                map(Math.max(2L * buffer.capacity(), position + recordLength));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't grow transaction journal", e);
+            }
+        }
+    }
+
+    private void map(long size) throws IOException {
+        checkArgument(size <= Integer.MAX_VALUE, "Transaction journal can't be bigger than 2 GB");
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void discardFrom(int offset) {
+        final var zeros = new byte[64 * 1024];
+        for (int i = offset; i < buffer.capacity(); i += zeros.length) {
+            buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.capacity() - i));
+        }
+    }
+
+    private static long crcOf(ByteBuffer body) {
+        final var crc = new CRC32();
+        crc.update(body);
+        return crc.getValue();
+    }
+
+    private static String keyFor(String sender, long nonce) {
+        return sender.toLowerCase(Locale.ROOT) + ":" + nonce;
+    }
+
+}
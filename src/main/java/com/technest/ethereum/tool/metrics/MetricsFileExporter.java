@@ -0,0 +1,48 @@
+package com.technest.ethereum.tool.metrics;
+
+import com.technest.ethereum.tool.configuration.MetricsConfigProperties;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Writes every metric in Prometheus text format to a file, periodically and once more on shutdown, so it can be picked up by a node exporter textfile
+// collector, or just read. The file is replaced atomically, so it's never seen half written. Disabled unless a file is configured.
+// Never lazy, not even in fast-start mode, as one-shot commands must have their metrics exported on shutdown too.
+@Log4j2
+@Lazy(false)
+@Component
+@RequiredArgsConstructor
+public class MetricsFileExporter {
+
+    private final MetricsConfigProperties properties;
+    private final PrometheusMeterRegistry meterRegistry;
+
+    @Scheduled(initialDelayString = "${metrics.export.interval:PT30S}", fixedDelayString = "${metrics.export.interval:PT30S}")
+    public void export() {
+        Option.of(properties.getExport().getFile()).map(Path::of).forEach(this::exportTo);
+    }
+
+    public void exportTo(Path file) {
+        final var temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Try.run(() -> {
+            Files.writeString(temporaryFile, meterRegistry.scrape());
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }).getOrElseThrow(e -> new RuntimeException("Couldn't export metrics to " + file, e));
+    }
+
+    @PreDestroy
+    void exportOnShutdown() {
+        Try.run(this::export).onFailure(e -> log.warn("Couldn't export metrics on shutdown: {}", e.getMessage()));
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.technest.ethereum.tool.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.stereotype.Component;
+
+// Times every shell command of the tool (shell.commands), tagged by command and outcome: success, or failure along with the exception it failed with.
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class ShellCommandMetricsAspect {
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("@annotation(shellMethod) && within(com.technest.ethereum.tool..*)")
+    public Object timeCommand(ProceedingJoinPoint joinPoint, ShellMethod shellMethod) throws Throwable {
+        final var command = shellMethod.key().length > 0 ? shellMethod.key()[0] : joinPoint.getSignature().getName();
+        final var sample = Timer.start(meterRegistry);
+        try {
+            final var result = joinPoint.proceed();
+            sample.stop(commandTimer(command, "success", "none"));
+            return result;
+        } catch (Throwable e) {
+            sample.stop(commandTimer(command, "failure", e.getClass().getSimpleName()));
+            throw e;
+        }
+    }
+
+    private Timer commandTimer(String command, String outcome, String exception) {
+        return Timer.builder("shell.commands")
+                .description("Shell commands run")
+                .tag("command", command)
+                .tag("outcome", outcome)
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+}
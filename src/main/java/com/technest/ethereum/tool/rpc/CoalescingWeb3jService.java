@@ -0,0 +1,339 @@
+package com.technest.ethereum.tool.rpc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.technest.ethereum.tool.configuration.ReadCoalescingConfigProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.reactivex.Flowable;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.extern.log4j.Log4j2;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.websocket.events.Notification;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Read-through layer between the services and the nodes. Identical read-only calls in flight at the same time are sent once, and every caller gets its own
+// copy of the response (results themselves are shared, and never modified). Reads at the latest block are pinned to the latest block number seen, rewriting
+// "latest" to it, so results read at the same time are consistent with each other, and they're cached until a newer block is seen. The latest block number
+// is asked again once it's older than headTtl, which FeeOracle's polling usually does already.
+// Reads at any other block (a given number, pending, safe...) are only coalesced, so the cache only holds reads at the latest block, and calls that aren't
+// reads (i.e. sending transactions) go straight to the nodes.
+// Reads are counted in rpc.reads, by result: hit (answered from cache), merged (joined an identical call in flight) or miss (sent to the node, also counting
+// the refreshes of the latest block number).
+@Log4j2
+public class CoalescingWeb3jService implements Web3jService {
+
+    private static final String BLOCK_NUMBER_METHOD = "eth_blockNumber";
+    // Position of the block parameter of the reads that can be pinned to a block.
+    private static final Map<String, Integer> BLOCK_PARAMETER_POSITIONS = Map.of(
+            "eth_call", 1, "eth_getBalance", 1, "eth_getBlockByNumber", 0, "eth_getCode", 1, "eth_getStorageAt", 2, "eth_getTransactionCount", 1
+    );
+    // Load balanced providers may route a pinned read to a node which hasn't seen the block yet. Those reads are sent again at the latest block, uncached.
+    private static final List<String> UNKNOWN_BLOCK_ERRORS = List.of("header not found", "unknown block", "block not found");
+
+    private final Web3jService service;
+    private final ReadCoalescingConfigProperties properties;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Response<?>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicReference<Head> head = new AtomicReference<>();
+    private final Counter hits;
+    private final Counter merges;
+    private final Counter misses;
+
+    private record Entry(BigInteger blockNumber, CompletableFuture<Response<?>> response) {
+    }
+
+    private record Head(BigInteger blockNumber, long seenAt) {
+    }
+
+    // Sends the call to the node, on its own or within a batch.
+    private interface Sender {
+        CompletableFuture<Response<?>> send(Request<?, ?> request);
+    }
+
+    public CoalescingWeb3jService(Web3jService service, ReadCoalescingConfigProperties properties, MeterRegistry meterRegistry) {
+        this.service = service;
+        this.properties = properties;
+        this.hits = counter(meterRegistry, "hit");
+        this.merges = counter(meterRegistry, "merged");
+        this.misses = counter(meterRegistry, "miss");
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        return RoutingWeb3jService.await(sendAsync(request, responseType));
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        if (!isCoalesced(request)) {
+            return service.sendAsync(request, responseType);
+        }
+
+        final Request<?, ?> read = request;
+        return getHeadIfNeededAsync(List.of(read))
+                .thenCompose(currentHead -> read(read, currentHead, this::sendAlone))
+                .thenApply(response -> copyOf(response, read.getId(), responseType));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return RoutingWeb3jService.await(sendBatchAsync(batchRequest));
+    }
+
+    // Calls answered from cache or joining one in flight are left out of the batch sent to the node.
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        final var requests = batchRequest.getRequests();
+        if (!requests.stream().allMatch(this::isCoalesced)) {
+            return service.sendBatchAsync(batchRequest);
+        }
+
+        return getHeadIfNeededAsync(requests).thenCompose(currentHead -> {
+            final var pendingBatch = new PendingBatch();
+            final var responses = requests.stream().map(request -> read(request, currentHead, pendingBatch)).toList();
+            pendingBatch.flush();
+
+            return CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+                final var copies = new ArrayList<Response<?>>(requests.size());
+                for (int i = 0; i < requests.size(); i++) {
+                    copies.add(copyOf(responses.get(i).join(), requests.get(i).getId(), requests.get(i).getResponseType()));
+                }
+                return new BatchResponse(requests, copies);
+            });
+        });
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return service.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private CompletableFuture<Response<?>> read(Request<?, ?> request, Option<BigInteger> currentHead, Sender sender) {
+        final var method = request.getMethod();
+        if (method.equals(BLOCK_NUMBER_METHOD) && currentHead.isDefined()) {
+            hits.increment();
+            return CompletableFuture.completedFuture(blockNumberResponse(currentHead.get()));
+        }
+
+        final var position = BLOCK_PARAMETER_POSITIONS.get(method);
+        final var blockParameter = Option.of(position).filter(i -> i < request.getParams().size()).flatMap(i -> blockParameterOf(request.getParams().get(i)));
+        if (blockParameter.contains(DefaultBlockParameterName.LATEST.getValue()) && currentHead.isDefined()) {
+            // A read which the node couldn't answer at the pinned block is sent as it was.
+            return readAt(request, position, currentHead.get(), sender).thenCompose(response -> isUnknownBlock(response)
+                    ? coalesce(keyOf(method, request.getParams()), () -> sendAlone(request))
+                    : CompletableFuture.completedFuture(response));
+        }
+        return coalesce(keyOf(method, request.getParams()), () -> sender.send(request));
+    }
+
+    private CompletableFuture<Response<?>> readAt(Request<?, ?> request, int position, BigInteger blockNumber, Sender sender) {
+        final var params = new ArrayList<Object>(request.getParams());
+        params.set(position, Numeric.toHexStringWithPrefix(blockNumber));
+        final var key = keyOf(request.getMethod(), params);
+        final Supplier<CompletableFuture<Response<?>>> fetch = () -> sender.send(new Request<>(request.getMethod(), params, service, request.getResponseType()));
+
+        // Reads at blocks older than the latest one seen would be evicted right away, so they're only coalesced.
+        final var currentHead = head.get();
+        if (currentHead == null || blockNumber.compareTo(currentHead.blockNumber()) < 0
+                || cache.size() >= properties.getMaxEntries() && !cache.containsKey(key)) {
+            return coalesce(key, fetch);
+        }
+
+        final var entry = cache.compute(key, (ignored, cached) -> {
+            if (cached != null && !cached.response().isCompletedExceptionally()) {
+                (cached.response().isDone() ? hits : merges).increment();
+                return cached;
+            }
+            misses.increment();
+            return new Entry(blockNumber, fetch.get());
+        });
+
+        // Failed calls and error responses aren't cached, the next identical read is sent again.
+        return entry.response().whenComplete((response, e) -> {
+            if (e != null || response.hasError()) {
+                cache.remove(key, entry);
+            }
+        });
+    }
+
+    private CompletableFuture<Response<?>> coalesce(String key, Supplier<CompletableFuture<Response<?>>> fetch) {
+        final var sent = new AtomicBoolean();
+        final var response = inFlight.computeIfAbsent(key, ignored -> {
+            sent.set(true);
+            return fetch.get();
+        });
+
+        if (sent.get()) {
+            misses.increment();
+            response.whenComplete((value, e) -> inFlight.remove(key, response));
+        } else {
+            merges.increment();
+        }
+        return response;
+    }
+
+    // Latest block number seen, asked to the node again when it's older than headTtl, if any of the requests need it. Reads are sent as they are when it
+    // can't be retrieved.
+    private CompletableFuture<Option<BigInteger>> getHeadIfNeededAsync(List<? extends Request<?, ?>> requests) {
+        if (requests.stream().noneMatch(CoalescingWeb3jService::needsHead)) {
+            return CompletableFuture.completedFuture(Option.none());
+        }
+
+        final var currentHead = head.get();
+        if (currentHead != null && System.nanoTime() - currentHead.seenAt() < properties.getHeadTtl().toNanos()) {
+            return CompletableFuture.completedFuture(Option.some(currentHead.blockNumber()));
+        }
+
+        final var request = new Request<>(BLOCK_NUMBER_METHOD, List.of(), service, EthBlockNumber.class);
+        return coalesce(keyOf(BLOCK_NUMBER_METHOD, List.of()), () -> sendAlone(request).thenApply(response -> {
+                    if (!response.hasError()) {
+                        updateHead(((EthBlockNumber) response).getBlockNumber());
+                    }
+                    return response;
+                }))
+                .handle((response, e) -> {
+                    if (e != null || response.hasError()) {
+                        log.debug("Couldn't get latest block number, reads won't be pinned", e);
+                        return Option.<BigInteger>none();
+                    }
+                    return Option.some(Numeric.decodeQuantity((String) response.getResult()));
+                });
+    }
+
+    // The head only moves forward, as nodes behind a load balancer may be a block apart. Reads cached at older blocks are evicted.
+    private void updateHead(BigInteger blockNumber) {
+        final var previous = head.getAndAccumulate(new Head(blockNumber, System.nanoTime()), (current, next) ->
+                current != null && current.blockNumber().compareTo(next.blockNumber()) > 0 ? new Head(current.blockNumber(), next.seenAt()) : next);
+
+        if (previous == null || previous.blockNumber().compareTo(blockNumber) < 0) {
+            cache.values().removeIf(entry -> entry.blockNumber().compareTo(blockNumber) < 0);
+        }
+    }
+
+    private boolean isCoalesced(Request<?, ?> request) {
+        return properties.isEnabled() && RoutingWeb3jService.READ_ONLY_METHODS.contains(request.getMethod());
+    }
+
+    private static boolean needsHead(Request<?, ?> request) {
+        final var position = BLOCK_PARAMETER_POSITIONS.get(request.getMethod());
+        return request.getMethod().equals(BLOCK_NUMBER_METHOD) || position != null && position < request.getParams().size()
+                && blockParameterOf(request.getParams().get(position)).contains(DefaultBlockParameterName.LATEST.getValue());
+    }
+
+    private CompletableFuture<Response<?>> sendAlone(Request<?, ?> request) {
+        return service.sendAsync(request, request.getResponseType()).thenApply(response -> response);
+    }
+
+    // Block parameters are given either as the tag or number itself, or as the DefaultBlockParameter it comes from.
+    private static Option<String> blockParameterOf(Object parameter) {
+        if (parameter instanceof DefaultBlockParameter blockParameter) {
+            return Option.of(blockParameter.getValue());
+        }
+        return parameter instanceof String value ? Option.some(value.toLowerCase(Locale.ROOT)) : Option.none();
+    }
+
+    private static boolean isUnknownBlock(Response<?> response) {
+        return response.hasError() && Option.of(response.getError().getMessage())
+                .map(message -> message.toLowerCase(Locale.ROOT))
+                .exists(message -> UNKNOWN_BLOCK_ERRORS.stream().anyMatch(message::contains));
+    }
+
+    private static String keyOf(String method, List<?> params) {
+        try {
+            return method + ObjectMapperFactory.getObjectMapper().writeValueAsString(params);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Couldn't serialize parameters of " + method, e);
+        }
+    }
+
+    private static Response<?> blockNumberResponse(BigInteger blockNumber) {
+        final var response = new EthBlockNumber();
+        response.setJsonrpc("2.0");
+        response.setResult(Numeric.toHexStringWithPrefix(blockNumber));
+        return response;
+    }
+
+    private static <T extends Response> T copyOf(Response<?> response, long id, Class<T> responseType) {
+        final var copy = Try.of(() -> responseType.getDeclaredConstructor().newInstance())
+                .getOrElseThrow(e -> new IllegalStateException("Couldn't create a " + responseType.getSimpleName() + " response", e));
+        copy.setId(id);
+        copy.setJsonrpc(response.getJsonrpc());
+        // Both are responses to the same request, so the result type is the same, but the response type it's given by is raw.
+        @SuppressWarnings("unchecked")
+        final Response<Object> untypedCopy = copy;
+        untypedCopy.setResult(response.getResult());
+        copy.setError(response.getError());
+        copy.setRawResponse(response.getRawResponse());
+        return copy;
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("rpc.reads")
+                .description("Read-only JSON-RPC calls, by whether they were answered from cache, joined an identical call in flight or were sent to the node")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // Reads sent to the node within a batch are collected and sent together, in a single batch, once every read of the batch has been looked up.
+    private class PendingBatch implements Sender {
+
+        private final Map<Long, CompletableFuture<Response<?>>> responses = new HashMap<>();
+        private final BatchRequest batch = new BatchRequest(service);
+
+        @Override
+        public CompletableFuture<Response<?>> send(Request<?, ?> request) {
+            final var response = new CompletableFuture<Response<?>>();
+            responses.put(request.getId(), response);
+            // The request is typed with a wildcard response, which can't be proven to be the parameterized response BatchRequest asks for.
+            @SuppressWarnings("unchecked")
+            final var batchable = (Request<?, ? extends Response<?>>) request;
+            batch.add(batchable);
+            return response;
+        }
+
+        private void flush() {
+            if (responses.isEmpty()) {
+                return;
+            }
+
+            service.sendBatchAsync(batch).whenComplete((batchResponse, e) -> {
+                if (e != null) {
+                    responses.values().forEach(response -> response.completeExceptionally(e));
+                    return;
+                }
+                batchResponse.getResponses().forEach(response -> Option.of(responses.get(response.getId())).forEach(future -> future.complete(response)));
+                responses.forEach((id, future) -> future.completeExceptionally(new IOException("Missing response for JSON-RPC request with id " + id)));
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.technest.ethereum.tool.rpc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Flowable;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Times every JSON-RPC call sent to an endpoint (rpc.requests), tagged by method, endpoint and outcome: success, error (the node answered with a JSON-RPC
+// error) or failure (no answer at all). Batches are timed as a whole, as method "batch", and every call in them is counted in rpc.batch.calls.
+public class InstrumentedWeb3jService implements Web3jService {
+
+    private static final String BATCH_METHOD = "batch";
+
+    private final Web3jService service;
+    private final String endpoint;
+    private final MeterRegistry meterRegistry;
+
+    public InstrumentedWeb3jService(Web3jService service, String endpoint, MeterRegistry meterRegistry) {
+        this.service = service;
+        this.endpoint = endpoint;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        final var sample = Timer.start(meterRegistry);
+        try {
+            final var response = service.send(request, responseType);
+            sample.stop(timer(request.getMethod(), outcomeOf(response)));
+            return response;
+        } catch (IOException | RuntimeException e) {
+            sample.stop(timer(request.getMethod(), "failure"));
+            throw e;
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        final var sample = Timer.start(meterRegistry);
+        return service.sendAsync(request, responseType)
+                .whenComplete((response, e) -> sample.stop(timer(request.getMethod(), e == null ? outcomeOf(response) : "failure")));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        final var sample = Timer.start(meterRegistry);
+        try {
+            final var batchResponse = service.sendBatch(batchRequest);
+            sample.stop(timer(BATCH_METHOD, "success"));
+            countBatchCalls(batchRequest, batchResponse);
+            return batchResponse;
+        } catch (IOException | RuntimeException e) {
+            sample.stop(timer(BATCH_METHOD, "failure"));
+            countBatchCalls(batchRequest, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        final var sample = Timer.start(meterRegistry);
+        return service.sendBatchAsync(batchRequest).whenComplete((batchResponse, e) -> {
+            sample.stop(timer(BATCH_METHOD, e == null ? "success" : "failure"));
+            countBatchCalls(batchRequest, e == null ? batchResponse : null);
+        });
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return service.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private Timer timer(String method, String outcome) {
+        return Timer.builder("rpc.requests")
+                .description("JSON-RPC calls sent to Ethereum nodes")
+                .tag("method", method)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    // Calls without a response (the whole batch failed, or the node left them out) count as failures.
+    private void countBatchCalls(BatchRequest batchRequest, BatchResponse batchResponse) {
+        final var responsesById = batchResponse == null ? Map.<Long, Response<?>>of()
+                : batchResponse.getResponses().stream().collect(Collectors.toMap(Response::getId, Function.identity(), (first, second) -> first));
+
+        for (final Request<?, ?> request : batchRequest.getRequests()) {
+            final var response = responsesById.get(request.getId());
+            Counter.builder("rpc.batch.calls")
+                    .description("JSON-RPC calls sent to Ethereum nodes within batches")
+                    .tag("method", request.getMethod())
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", response == null ? "failure" : outcomeOf(response))
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private static String outcomeOf(Response<?> response) {
+        return response.hasError() ? "error" : "success";
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.technest.ethereum.tool.rpc;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.technest.ethereum.tool.configuration.RateGovernorConfigProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vavr.control.Option;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Paces requests to a node so they stay within its provider's quota, without being told the quota: a token bucket, weighted by the cost of every request,
+// limits the rate, and a limit on requests in flight keeps the node from queueing them. Both are adjusted with AIMD (additive increase, multiplicative
+// decrease): they grow while requests have to wait for them and the node keeps up, the concurrency limit shrinks when latency goes over the threshold, and
+// both are cut when the node throttles (HTTP 429). Throttling also pauses every request until the node's Retry-After, plus jitter, so they don't all come
+// back at the same time. Several throttled requests in the same adjustInterval only count once, as they come from the same burst.
+// Current rate, concurrency limit and requests in flight are published as rpc.governor.* gauges.
+@Log4j2
+public class RateGovernor {
+
+    private final String endpoint;
+    private final RateGovernorConfigProperties properties;
+    private final RateLimiter rateLimiter;
+    private final Counter throttledCounter;
+    private final Object lock = new Object();
+    private volatile double rate;
+    private int concurrencyLimit;
+    private int inFlight;
+    private long lastAdjustment = System.nanoTime();
+    private long lastDecrease;
+    private volatile boolean saturated;
+    private boolean congested;
+    private int consecutiveThrottles;
+    private volatile long pausedUntil = System.nanoTime();
+
+    public RateGovernor(String endpoint, RateGovernorConfigProperties properties, MeterRegistry meterRegistry) {
+        this.endpoint = endpoint;
+        this.properties = properties;
+        this.rate = properties.getInitialRate();
+        this.concurrencyLimit = properties.getInitialConcurrency();
+        this.rateLimiter = RateLimiter.create(rate);
+        this.lastDecrease = lastAdjustment - properties.getAdjustInterval().toNanos();
+        this.throttledCounter = Counter.builder("rpc.governor.throttled").description("Requests throttled by the node (HTTP 429)").tag("endpoint", endpoint)
+                .register(meterRegistry);
+
+        Gauge.builder("rpc.governor.rate", this, RateGovernor::getRate).description("Request cost units per second currently permitted").tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("rpc.governor.concurrency", this, RateGovernor::getConcurrencyLimit).description("Requests in flight currently permitted")
+                .tag("endpoint", endpoint).register(meterRegistry);
+        Gauge.builder("rpc.governor.in.flight", this, RateGovernor::getInFlight).description("Requests in flight").tag("endpoint", endpoint).register(meterRegistry);
+    }
+
+    // Blocks until a request of the given cost can be sent. Every acquire must be followed by a release.
+    public void acquire(int cost) throws InterruptedIOException {
+        try {
+            for (var pause = pausedUntil - System.nanoTime(); pause > 0; pause = pausedUntil - System.nanoTime()) {
+                Thread.sleep(pause / 1_000_000, (int) (pause % 1_000_000));
+            }
+            synchronized (lock) {
+                while (inFlight >= concurrencyLimit) {
+                    saturated = true;
+                    lock.wait();
+                }
+                inFlight++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request to " + endpoint);
+        }
+
+        if (cost > 0 && !rateLimiter.tryAcquire(cost)) {
+            saturated = true;
+            rateLimiter.acquire(cost);
+        }
+    }
+
+    public void release(long latencyInNanos, boolean throttled) {
+        synchronized (lock) {
+            inFlight--;
+            lock.notifyAll();
+
+            congested |= latencyInNanos > properties.getLatencyThreshold().toNanos();
+            if (!throttled) {
+                consecutiveThrottles = 0;
+                adjust();
+            }
+        }
+    }
+
+    // Returns how long requests are paused for.
+    public Duration onThrottled(Option<Duration> retryAfter) {
+        throttledCounter.increment();
+        synchronized (lock) {
+            final var now = System.nanoTime();
+            if (now - lastDecrease >= properties.getAdjustInterval().toNanos()) {
+                setRate(rate * properties.getDecreaseFactor());
+                concurrencyLimit = Math.max(properties.getMinConcurrency(), (int) (concurrencyLimit * properties.getDecreaseFactor()));
+                lastDecrease = now;
+                lastAdjustment = now;
+                saturated = false;
+                congested = false;
+                log.info("{} is throttling requests, rate down to {}/s and concurrency to {}", endpoint, Math.round(rate), concurrencyLimit);
+            }
+
+            final var backoff = retryAfter.getOrElse(() -> properties.getMinBackoff().multipliedBy(1L << Math.min(consecutiveThrottles, 16)));
+            consecutiveThrottles++;
+            final var capped = backoff.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : backoff;
+            final var pause = capped.plusNanos((long) (capped.toNanos() * properties.getJitter() * ThreadLocalRandom.current().nextDouble()));
+            pausedUntil = Math.max(pausedUntil, now + pause.toNanos());
+            return pause;
+        }
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getConcurrencyLimit() {
+        synchronized (lock) {
+            return concurrencyLimit;
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    // Once per adjustInterval. Limits only grow when they were actually holding requests back, so they don't grow unbounded while the tool is idle.
+    private void adjust() {
+        final var now = System.nanoTime();
+        if (now - lastAdjustment < properties.getAdjustInterval().toNanos()) {
+            return;
+        }
+
+        if (congested) {
+            concurrencyLimit = Math.max(properties.getMinConcurrency(), Math.min(concurrencyLimit - 1, (int) (concurrencyLimit * 0.9)));
+        } else if (saturated) {
+            setRate(rate + properties.getRateIncrease());
+            concurrencyLimit = Math.min(properties.getMaxConcurrency(), concurrencyLimit + 1);
+        }
+        lastAdjustment = now;
+        saturated = false;
+        congested = false;
+    }
+
+    private void setRate(double newRate) {
+        rate = Math.max(properties.getMinRate(), Math.min(properties.getMaxRate(), newRate));
+        rateLimiter.setRate(rate);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.technest.ethereum.tool.rpc;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Sends every HTTP request to a node through its rate governor. The cost of a request is the cost of its JSON-RPC method, or the sum of them for a batch.
+// Requests throttled with HTTP 429 are sent again once the governor's pause is over, up to maxRetries times, after which the 429 is handed to web3j.
+// web3j sends requests from its own thread pool, even async ones, so blocking here doesn't block callers.
+@Log4j2
+public class RateGovernorInterceptor implements Interceptor {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final Pattern METHOD = Pattern.compile("\"method\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final RateGovernor governor;
+    private final Map<String, Integer> methodCosts;
+    private final int defaultMethodCost;
+    private final int maxRetries;
+
+    public RateGovernorInterceptor(RateGovernor governor, Map<String, Integer> methodCosts, int defaultMethodCost, int maxRetries) {
+        this.governor = governor;
+        this.methodCosts = Map.copyOf(methodCosts);
+        this.defaultMethodCost = defaultMethodCost;
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        final var request = chain.request();
+        final var cost = costOf(request);
+
+        for (int attempt = 0; ; attempt++) {
+            governor.acquire(cost);
+            final var startTime = System.nanoTime();
+            final Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException | RuntimeException e) {
+                governor.release(System.nanoTime() - startTime, false);
+                throw e;
+            }
+
+            final var throttled = response.code() == TOO_MANY_REQUESTS;
+            governor.release(System.nanoTime() - startTime, throttled);
+            if (!throttled) {
+                return response;
+            }
+
+            final var pause = governor.onThrottled(retryAfterOf(response));
+            if (attempt >= maxRetries) {
+                return response;
+            }
+            log.debug("Request throttled, sending it again in {} ms", pause.toMillis());
+            response.close();
+        }
+    }
+
+    private int costOf(Request request) {
+        final var body = request.body();
+        if (body == null) {
+            return defaultMethodCost;
+        }
+
+        final var buffer = new Buffer();
+        Try.run(() -> body.writeTo(buffer));
+        final var matcher = METHOD.matcher(buffer.readUtf8());
+        var cost = 0;
+        while (matcher.find()) {
+            cost += methodCosts.getOrDefault(matcher.group(1), defaultMethodCost);
+        }
+        return cost;
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date.
+    private static Option<Duration> retryAfterOf(Response response) {
+        return Option.of(response.header("Retry-After"))
+                .map(String::trim)
+                .flatMap(retryAfter -> Try.of(() -> Duration.ofSeconds(Long.parseLong(retryAfter)))
+                        .orElse(() -> Try.of(() -> Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME))))
+                        .filter(duration -> !duration.isNegative())
+                        .toOption());
+    }
+
+}
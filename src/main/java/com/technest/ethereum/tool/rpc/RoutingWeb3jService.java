@@ -0,0 +1,183 @@
+package com.technest.ethereum.tool.rpc;
+
+import com.technest.ethereum.tool.configuration.EthereumNetworkConfigProperties;
+import io.reactivex.Flowable;
+import lombok.extern.log4j.Log4j2;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Routes read-only calls to the endpoint with the lowest observed latency, hedging them to the second fastest endpoint when the fastest one is slower than
+// usual. Any other call (i.e. sending transactions) is always sent to the primary endpoint, and so are reads depending on what the primary endpoint has seen
+// of the transactions sent to it: nonces, receipts and anything at the pending block, as other nodes may not have those transactions yet.
+@Log4j2
+public class RoutingWeb3jService implements Web3jService {
+
+    static final Set<String> READ_ONLY_METHODS = Set.of(
+            "eth_blockNumber", "eth_call", "eth_chainId", "eth_estimateGas", "eth_feeHistory", "eth_gasPrice", "eth_getBalance", "eth_getBlockByHash",
+            "eth_getBlockByNumber", "eth_getCode", "eth_getLogs", "eth_getStorageAt", "eth_getTransactionByHash", "eth_getTransactionCount",
+            "eth_getTransactionReceipt", "eth_maxPriorityFeePerGas", "net_version", "web3_clientVersion"
+    );
+    private static final Set<String> PRIMARY_ONLY_METHODS = Set.of("eth_getTransactionCount", "eth_getTransactionReceipt");
+    private static final String PENDING = DefaultBlockParameterName.PENDING.getValue();
+
+    private final List<RpcEndpoint> endpoints;
+    private final EthereumNetworkConfigProperties.Hedging hedging;
+    private final ScheduledThreadPoolExecutor hedgingScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        final var thread = new Thread(runnable, "rpc-hedging");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // First endpoint is the primary one.
+    public RoutingWeb3jService(List<RpcEndpoint> endpoints, EthereumNetworkConfigProperties.Hedging hedging) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one node URL is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.hedging = hedging;
+        this.hedgingScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    public List<RpcEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        return await(sendAsync(request, responseType));
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        return route(isRoutable(request), service -> service.sendAsync(request, responseType));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return await(sendBatchAsync(batchRequest));
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        final var routable = batchRequest.getRequests().stream().allMatch(RoutingWeb3jService::isRoutable);
+        return route(routable, service -> service.sendBatchAsync(batchRequest));
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return getPrimary().getService().subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        hedgingScheduler.shutdownNow();
+        for (final var endpoint : endpoints) {
+            endpoint.getService().close();
+        }
+    }
+
+    private <T> CompletableFuture<T> route(boolean routable, Function<Web3jService, CompletableFuture<T>> call) {
+        if (!routable || endpoints.size() == 1) {
+            return sendTo(getPrimary(), call);
+        }
+
+        final var rankedEndpoints = endpoints.stream().sorted(Comparator.comparingLong(RpcEndpoint::getEwmaLatency)).toList();
+        final var fastest = rankedEndpoints.get(0);
+        final var secondFastest = rankedEndpoints.get(1);
+        final var hedgeDelay = max(fastest.getLatencyPercentile(hedging.getPercentile(), hedging.getDefaultDelay()), hedging.getMinDelay());
+
+        final var result = new CompletableFuture<T>();
+        final var pendingAttempts = new AtomicInteger(1);
+        final var hedged = new AtomicBoolean();
+        final Runnable hedge = () -> {
+            if (!result.isDone() && hedged.compareAndSet(false, true)) {
+                log.debug("Hedging {} request to {}", fastest, secondFastest);
+                pendingAttempts.incrementAndGet();
+                sendTo(secondFastest, call).whenComplete((value, error) -> completeAttempt(result, pendingAttempts, value, error));
+            }
+        };
+
+        sendTo(fastest, call).whenComplete((value, error) -> {
+            // A failed read is retried right away in the second fastest endpoint, instead of waiting for the hedge delay.
+            if (error != null) {
+                hedge.run();
+            }
+            completeAttempt(result, pendingAttempts, value, error);
+        });
+        final var scheduledHedge = hedgingScheduler.schedule(hedge, hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, error) -> scheduledHedge.cancel(false));
+
+        return result;
+    }
+
+    // Completes with the first successful attempt, or with the error of the last one if all of them failed.
+    private static <T> void completeAttempt(CompletableFuture<T> result, AtomicInteger pendingAttempts, T value, Throwable error) {
+        if (error == null) {
+            result.complete(value);
+        } else if (pendingAttempts.decrementAndGet() == 0) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static <T> CompletableFuture<T> sendTo(RpcEndpoint endpoint, Function<Web3jService, CompletableFuture<T>> call) {
+        final var startTime = System.nanoTime();
+        return call.apply(endpoint.getService()).whenComplete((value, error) -> {
+            final var latency = System.nanoTime() - startTime;
+            if (error == null) {
+                endpoint.recordLatency(latency);
+            } else {
+                endpoint.recordFailure(latency);
+            }
+        });
+    }
+
+    private RpcEndpoint getPrimary() {
+        return endpoints.get(0);
+    }
+
+    private static boolean isRoutable(Request<?, ?> request) {
+        return READ_ONLY_METHODS.contains(request.getMethod()) && !PRIMARY_ONLY_METHODS.contains(request.getMethod())
+                && request.getParams().stream().noneMatch(RoutingWeb3jService::isPending);
+    }
+
+    // Block parameters are given either as the tag itself, or as the DefaultBlockParameter it comes from.
+    private static boolean isPending(Object parameter) {
+        final var value = parameter instanceof DefaultBlockParameter blockParameter ? blockParameter.getValue() : parameter;
+        return value instanceof String tag && tag.equalsIgnoreCase(PENDING);
+    }
+
+    private static Duration max(Duration first, Duration second) {
+        return first.compareTo(second) >= 0 ? first : second;
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for node response", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        }
+    }
+
+}
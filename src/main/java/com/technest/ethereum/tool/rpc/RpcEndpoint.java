@@ -0,0 +1,73 @@
+package com.technest.ethereum.tool.rpc;
+
+import lombok.Getter;
+import org.web3j.protocol.Web3jService;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A node the tool can talk to, along with the latencies observed for it.
+public class RpcEndpoint {
+
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int MIN_LATENCY_SAMPLES = 16;
+
+    @Getter
+    private final String name;
+    @Getter
+    private final Web3jService service;
+    // Exponentially weighted moving average of latency, in nanos. It starts at zero, so endpoints not used yet are tried first.
+    private final AtomicLong ewmaLatency = new AtomicLong();
+    private final long[] latencySamples = new long[LATENCY_SAMPLES];
+    private long latencySamplesCount = 0;
+
+    public RpcEndpoint(String url, Web3jService service) {
+        this.name = nameOf(url);
+        this.service = service;
+    }
+
+    // Only the host (and port, if any) is kept, as node URLs usually carry API keys in their path.
+    public static String nameOf(String url) {
+        final var uri = URI.create(url);
+        return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    public void recordLatency(long latencyInNanos) {
+        ewmaLatency.getAndUpdate(ewma -> ewma == 0 ? latencyInNanos : (long) (ewma + EWMA_WEIGHT * (latencyInNanos - ewma)));
+
+        synchronized (latencySamples) {
+            latencySamples[(int) (latencySamplesCount++ % LATENCY_SAMPLES)] = latencyInNanos;
+        }
+    }
+
+    // Failed requests count as very slow ones, so traffic moves away from failing endpoints until they recover.
+    public void recordFailure(long latencyInNanos) {
+        recordLatency(Math.max(latencyInNanos, ewmaLatency.get()) * 4);
+    }
+
+    public long getEwmaLatency() {
+        return ewmaLatency.get();
+    }
+
+    public Duration getLatencyPercentile(double percentile, Duration defaultLatency) {
+        final long[] samples;
+        synchronized (latencySamples) {
+            if (latencySamplesCount < MIN_LATENCY_SAMPLES) {
+                return defaultLatency;
+            }
+            samples = Arrays.copyOf(latencySamples, (int) Math.min(latencySamplesCount, LATENCY_SAMPLES));
+        }
+
+        Arrays.sort(samples);
+        return Duration.ofNanos(samples[Math.min(samples.length - 1, (int) (samples.length * percentile))]);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
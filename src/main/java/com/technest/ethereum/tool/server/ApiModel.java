@@ -0,0 +1,40 @@
+package com.technest.ethereum.tool.server;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+// Request and response bodies of the HTTP API. Bulk endpoints take and return one of these per line (NDJSON), bulk responses tagged with the line they come
+// from and either a result or an error.
+final class ApiModel {
+
+    private ApiModel() {
+    }
+
+    record UnsignedTransactionRequest(String pubKeyInHex, String destinationAddress, BigDecimal usdAmount, String contractAddress) {
+    }
+
+    record UnsignedTransactionResponse(String sourceAddress, BigInteger nonce, String unsignedRawTx, String hashToSign) {
+    }
+
+    record SignatureRequest(String pubKeyInHex, String unsignedRawTx, String signature, String hashToSign) {
+    }
+
+    record SignedTransactionResponse(String txHash, String signedRawTx) {
+    }
+
+    record BroadcastRequest(String signedRawTx) {
+    }
+
+    record BroadcastResponse(String txHash) {
+    }
+
+    record BalanceResponse(String address, BigInteger wei, BigDecimal usd) {
+    }
+
+    record TokenBalanceResponse(String address, String contractAddress, String symbol, BigInteger balance, BigDecimal scaledBalance) {
+    }
+
+    record BulkResult<T>(long line, T result, String error) {
+    }
+
+}
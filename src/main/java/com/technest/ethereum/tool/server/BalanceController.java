@@ -0,0 +1,87 @@
+package com.technest.ethereum.tool.server;
+
+import com.technest.ethereum.tool.configuration.ServerModeConfigProperties;
+import com.technest.ethereum.tool.exchangerate.ExchangeRateService;
+import com.technest.ethereum.tool.service.BalanceScanService;
+import com.technest.ethereum.tool.service.ERC20Service;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.web3j.crypto.WalletUtils;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+@Profile("server")
+@RestController
+@RequestMapping("/balances")
+@RequiredArgsConstructor
+public class BalanceController {
+
+    private final Web3j web3j;
+    private final ExchangeRateService exchangeRateService;
+    private final ERC20Service erc20Service;
+    private final BalanceScanService balanceScanService;
+    private final ServerModeConfigProperties properties;
+
+    @GetMapping("/{address}")
+    public Mono<ApiModel.BalanceResponse> getBalance(@PathVariable String address) {
+        checkArgument(WalletUtils.isValidAddress(address), "Invalid address: " + address);
+        return Mono.fromFuture(() -> web3j.ethGetBalance(address, DefaultBlockParameterName.LATEST).sendAsync()).map(response -> {
+            if (response.hasError()) {
+                throw new RuntimeException(response.getError().getMessage());
+            }
+            return new ApiModel.BalanceResponse(address, response.getBalance(), exchangeRateService.fromWeisToUsd(response.getBalance()));
+        });
+    }
+
+    @GetMapping("/{address}/tokens/{contractAddress}")
+    public Mono<ApiModel.TokenBalanceResponse> getTokenBalance(@PathVariable String address, @PathVariable String contractAddress) {
+        checkArgument(WalletUtils.isValidAddress(address) && WalletUtils.isValidAddress(contractAddress), "Invalid address");
+        return Mono.fromFuture(() -> erc20Service.getTokenMetadataAsync(contractAddress, address))
+                .zipWith(Mono.fromFuture(() -> erc20Service.getBalanceOfAsync(contractAddress, address)), (metadata, balance) -> new ApiModel.TokenBalanceResponse(
+                        address, contractAddress, metadata.symbol(), balance, new BigDecimal(balance).movePointLeft(metadata.decimals().intValueExact())));
+    }
+
+    // Body is a plain text list of addresses, one per line. Every balance is retrieved at the same block, a JSON-RPC batch at a time, and streamed back as
+    // soon as its batch is done.
+    @PostMapping(path = "/bulk", consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ApiModel.BulkResult<ApiModel.BalanceResponse>> getBalances(@RequestBody Flux<String> lines) {
+        // Indexed before skipping blank lines and comments, so results are tagged with the line they actually come from.
+        final var addresses = lines.index()
+                .map(indexed -> Tuples.of(indexed.getT1(), indexed.getT2().trim()))
+                .filter(indexed -> !indexed.getT2().isEmpty() && !indexed.getT2().startsWith("#"));
+        return Mono.fromFuture(() -> web3j.ethBlockNumber().sendAsync()).flatMapMany(blockNumber -> {
+            final var block = DefaultBlockParameter.valueOf(blockNumber.getBlockNumber());
+            return addresses.buffer(properties.getBalanceBatchSize())
+                    .flatMap(batch -> Mono.fromFuture(() -> balanceScanService.getBalancesAsync(batch.stream().map(Tuple2::getT2).toList(), block))
+                            .flatMapIterable(balances -> {
+                                final var results = new ArrayList<ApiModel.BulkResult<ApiModel.BalanceResponse>>(balances.size());
+                                for (int i = 0; i < balances.size(); i++) {
+                                    final var balance = balances.get(i);
+                                    final var line = batch.get(i).getT1() + 1;
+                                    results.add(balance.balance()
+                                            .map(wei -> new ApiModel.BulkResult<>(line, new ApiModel.BalanceResponse(balance.address(), wei, exchangeRateService.fromWeisToUsd(wei)), null))
+                                            .getOrElse(() -> new ApiModel.BulkResult<>(line, null, "Couldn't retrieve balance of " + balance.address())));
+                                }
+                                return results;
+                            }), properties.getBulkConcurrency());
+        });
+    }
+
+}
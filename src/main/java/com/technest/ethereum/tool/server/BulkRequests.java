@@ -0,0 +1,21 @@
+package com.technest.ethereum.tool.server;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+// Processes the lines of a bulk request with bounded concurrency. Lines are only requested from the body when there's room for them, and every result is
+// written as soon as it's ready (completion order, tagged with its line number). A failed line doesn't fail the others.
+final class BulkRequests {
+
+    private BulkRequests() {
+    }
+
+    static <T, R> Flux<ApiModel.BulkResult<R>> process(Flux<T> requests, int concurrency, Function<T, Mono<R>> handler) {
+        return requests.index().flatMap(indexed -> Mono.defer(() -> handler.apply(indexed.getT2()))
+                .map(result -> new ApiModel.BulkResult<>(indexed.getT1() + 1, result, null))
+                .onErrorResume(e -> Mono.just(new ApiModel.BulkResult<>(indexed.getT1() + 1, null, String.valueOf(e.getMessage())))), concurrency);
+    }
+
+}
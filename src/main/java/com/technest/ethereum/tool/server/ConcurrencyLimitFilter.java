@@ -0,0 +1,35 @@
+package com.technest.ethereum.tool.server;
+
+import com.technest.ethereum.tool.configuration.ServerModeConfigProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.Semaphore;
+
+// Rejects requests with 429 when there are already too many being served, instead of queueing them up until everything times out.
+@Component
+@Profile("server")
+public class ConcurrencyLimitFilter implements WebFilter {
+
+    private final Semaphore permits;
+
+    public ConcurrencyLimitFilter(ServerModeConfigProperties properties) {
+        this.permits = new Semaphore(properties.getMaxConcurrentRequests());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!permits.tryAcquire()) {
+            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            exchange.getResponse().getHeaders().set("Retry-After", "1");
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange).doFinally(signal -> permits.release());
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.technest.ethereum.tool.server;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@Profile("server")
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final PrometheusMeterRegistry meterRegistry;
+
+    // Every metric, in Prometheus text format, so the server can be scraped.
+    @GetMapping(path = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String metrics() {
+        return meterRegistry.scrape();
+    }
+
+}
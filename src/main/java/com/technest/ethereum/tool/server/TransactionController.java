@@ -0,0 +1,107 @@
+package com.technest.ethereum.tool.server;
+
+import com.technest.ethereum.tool.configuration.ServerModeConfigProperties;
+import com.technest.ethereum.tool.service.BroadcastService;
+import com.technest.ethereum.tool.service.EthereumAddressGeneratorService;
+import com.technest.ethereum.tool.service.EthereumTransactionService;
+import com.technest.ethereum.tool.service.SignatureAttachmentService;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Utils;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.utils.Numeric;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// Same operations as the Transaction and EthereumRPC shell commands, as non-blocking endpoints. Network bound work never blocks a thread, and signature
+// checks (CPU bound) run on the parallel scheduler, so event loop threads are always free to take new requests.
+@Profile("server")
+@RestController
+@RequestMapping("/transactions")
+@RequiredArgsConstructor
+public class TransactionController {
+
+    private final EthereumAddressGeneratorService ethereumAddressGeneratorService;
+    private final EthereumTransactionService ethereumTransactionService;
+    private final SignatureAttachmentService signatureAttachmentService;
+    private final BroadcastService broadcastService;
+    private final ServerModeConfigProperties properties;
+
+    @PostMapping("/unsigned")
+    public Mono<ApiModel.UnsignedTransactionResponse> createUnsignedTransaction(@RequestBody ApiModel.UnsignedTransactionRequest request) {
+        return Mono.defer(() -> createUnsigned(request));
+    }
+
+    @PostMapping(path = "/unsigned/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ApiModel.BulkResult<ApiModel.UnsignedTransactionResponse>> createUnsignedTransactions(@RequestBody Flux<ApiModel.UnsignedTransactionRequest> requests) {
+        return BulkRequests.process(requests, properties.getBulkConcurrency(), this::createUnsigned);
+    }
+
+    @PostMapping("/signed")
+    public Mono<ApiModel.SignedTransactionResponse> attachSignature(@RequestBody ApiModel.SignatureRequest request) {
+        return Mono.fromCallable(() -> sign(request)).subscribeOn(Schedulers.parallel());
+    }
+
+    @PostMapping(path = "/signed/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ApiModel.BulkResult<ApiModel.SignedTransactionResponse>> attachSignatures(@RequestBody Flux<ApiModel.SignatureRequest> requests) {
+        return BulkRequests.process(requests, properties.getBulkConcurrency(), request -> Mono.fromCallable(() -> sign(request)).subscribeOn(Schedulers.parallel()));
+    }
+
+    @PostMapping("/broadcast")
+    public Mono<ApiModel.BroadcastResponse> broadcast(@RequestBody ApiModel.BroadcastRequest request) {
+        return Mono.defer(() -> broadcastSigned(request));
+    }
+
+    @PostMapping(path = "/broadcast/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ApiModel.BulkResult<ApiModel.BroadcastResponse>> broadcastAll(@RequestBody Flux<ApiModel.BroadcastRequest> requests) {
+        return BulkRequests.process(requests, properties.getBulkConcurrency(), this::broadcastSigned);
+    }
+
+    private Mono<ApiModel.UnsignedTransactionResponse> createUnsigned(ApiModel.UnsignedTransactionRequest request) {
+        checkArgument(request.pubKeyInHex() != null && request.destinationAddress() != null && request.usdAmount() != null,
+                "pubKeyInHex, destinationAddress and usdAmount are required");
+
+        final var sourceAddress = ethereumAddressGeneratorService.generateAddressFrom(ECKey.fromPublicOnly(Utils.HEX.decode(request.pubKeyInHex().toLowerCase())));
+        final var maybeContractAddress = Option.of(request.contractAddress()).filter(contractAddress -> !contractAddress.isBlank());
+        return Mono.fromFuture(() -> ethereumTransactionService.createUnsignedTransactionAsync(sourceAddress, request.destinationAddress(), request.usdAmount(), maybeContractAddress))
+                .map(unsignedTransaction -> new ApiModel.UnsignedTransactionResponse(sourceAddress, unsignedTransaction.rawTransaction().getNonce(),
+                        unsignedTransaction.rawTransactionInHex(), unsignedTransaction.hashToSign()));
+    }
+
+    private ApiModel.SignedTransactionResponse sign(ApiModel.SignatureRequest request) {
+        checkArgument(request.pubKeyInHex() != null && request.unsignedRawTx() != null && request.signature() != null && request.hashToSign() != null,
+                "pubKeyInHex, unsignedRawTx, signature and hashToSign are required");
+
+        final var publicKey = ECKey.fromPublicOnly(Utils.HEX.decode(request.pubKeyInHex().toLowerCase())).getPubKeyPoint();
+        final var signedTransaction = signatureAttachmentService.attachSignature(publicKey, decode(request.unsignedRawTx()),
+                Utils.HEX.decode(Numeric.cleanHexPrefix(request.signature()).toLowerCase()), Utils.HEX.decode(Numeric.cleanHexPrefix(request.hashToSign()).toLowerCase()));
+        final var signedTransactionInHex = Numeric.toHexString(signedTransaction);
+        return new ApiModel.SignedTransactionResponse(Hash.sha3(signedTransactionInHex), signedTransactionInHex);
+    }
+
+    private Mono<ApiModel.BroadcastResponse> broadcastSigned(ApiModel.BroadcastRequest request) {
+        checkArgument(request.signedRawTx() != null, "signedRawTx is required");
+        decode(request.signedRawTx());
+        return Mono.fromFuture(() -> broadcastService.broadcastAsync(request.signedRawTx())).map(ApiModel.BroadcastResponse::new);
+    }
+
+    // The decoder fails with all sorts of runtime exceptions (RLP wrong encoding, class cast...) on malformed input, which is the client's fault.
+    private static RawTransaction decode(String rawTransactionInHex) {
+        return Try.of(() -> TransactionDecoder.decode(rawTransactionInHex))
+                .getOrElseThrow(e -> new IllegalArgumentException("Invalid raw transaction: " + e.getMessage(), e));
+    }
+
+}
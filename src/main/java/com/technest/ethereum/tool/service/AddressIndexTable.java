@@ -0,0 +1,93 @@
+package com.technest.ethereum.tool.service;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+// Address -> derivation index lookup table, stored off-heap so that hundreds of thousands of entries don't mean hundreds of thousands of objects for the GC to
+// walk through.
+// Open addressing with linear probing: every slot is the 20 address bytes followed by the index plus one (0 marks an empty slot). Addresses are Keccak hashes,
+// so their first bytes are already evenly distributed and can be used as the hash directly.
+// Not thread safe for writes. Once filled, it can be read from any thread if it's safely published.
+class AddressIndexTable {
+
+    private static final int ADDRESS_LENGTH = 20;
+    private static final int SLOT_SIZE = ADDRESS_LENGTH + Integer.BYTES;
+
+    private final ByteBuffer slots;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    AddressIndexTable(int expectedSize) {
+        checkArgument(expectedSize > 0 && expectedSize <= (1 << 25), "Unsupported table size: " + expectedSize);
+        // Load factor of 0.5 at most, so probe sequences stay short.
+        final var capacity = Integer.highestOneBit(expectedSize * 2 - 1) << 1;
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        this.mask = capacity - 1;
+        this.maxSize = capacity / 2;
+    }
+
+    void put(byte[] addresses, int offset, int index) {
+        checkState(size < maxSize, "Address index table is full");
+
+        var slot = slotFor(addresses, offset);
+        while (true) {
+            final var position = slot * SLOT_SIZE;
+            final var storedIndex = slots.getInt(position + ADDRESS_LENGTH);
+            if (storedIndex == 0) {
+                for (int i = 0; i < ADDRESS_LENGTH; i++) {
+                    slots.put(position + i, addresses[offset + i]);
+                }
+                slots.putInt(position + ADDRESS_LENGTH, index + 1);
+                size++;
+                return;
+            } else if (matches(position, addresses, offset)) {
+                slots.putInt(position + ADDRESS_LENGTH, index + 1);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Returns -1 if the address isn't in the table.
+    int get(byte[] address) {
+        checkArgument(address.length == ADDRESS_LENGTH, "Invalid address length: " + address.length);
+
+        var slot = slotFor(address, 0);
+        while (true) {
+            final var position = slot * SLOT_SIZE;
+            final var storedIndex = slots.getInt(position + ADDRESS_LENGTH);
+            if (storedIndex == 0) {
+                return -1;
+            } else if (matches(position, address, 0)) {
+                return storedIndex - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getMemoryUsage() {
+        return slots.capacity();
+    }
+
+    private int slotFor(byte[] address, int offset) {
+        final var hash = (address[offset] & 0xff) << 24 | (address[offset + 1] & 0xff) << 16 | (address[offset + 2] & 0xff) << 8 | (address[offset + 3] & 0xff);
+        return hash & mask;
+    }
+
+    private boolean matches(int position, byte[] address, int offset) {
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            if (slots.get(position + i) != address[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
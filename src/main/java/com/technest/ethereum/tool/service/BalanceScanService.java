@@ -0,0 +1,137 @@
+package com.technest.ethereum.tool.service;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.web3j.crypto.WalletUtils;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthGetBalance;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// Retrieves ETH balances of any number of addresses with JSON-RPC batches of eth_getBalance, all of them at the same block, with a bounded number of batches
+// in flight. Addresses are only read when there's room for a new batch, so memory stays flat regardless of how many there are.
+// Results are handed to the caller a batch at a time, in completion order, and never from two threads at the same time.
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class BalanceScanService {
+
+    private static final Duration MAX_TRACKED_LATENCY = Duration.ofMinutes(1);
+
+    private final Web3j web3j;
+    private final JsonRpcBatchService jsonRpcBatchService;
+
+    // Balance is empty when it couldn't be retrieved.
+    public record AddressBalance(String address, Option<BigInteger> balance) {
+    }
+
+    public record ScanResult(BigInteger blockNumber, long addresses, long failed, long batches, Duration elapsed, LatencyHistogram batchLatencies) {
+
+        public double addressesPerSecond() {
+            return elapsed.isZero() ? addresses : addresses * 1000.0 / elapsed.toMillis();
+        }
+
+    }
+
+    public ScanResult scan(Stream<String> addresses, int batchSize, int maxBatchesInFlight, Consumer<List<AddressBalance>> resultConsumer) {
+        checkArgument(batchSize > 0 && maxBatchesInFlight > 0, "Batch size and batches in flight must be positive");
+
+        final var startTime = System.nanoTime();
+        final var blockNumber = Try.of(() -> web3j.ethBlockNumber().send().getBlockNumber())
+                .getOrElseThrow(e -> new RuntimeException("Cannot get latest block number", e));
+        final var block = DefaultBlockParameter.valueOf(blockNumber);
+
+        final var scanned = new AtomicLong();
+        final var failed = new AtomicLong();
+        final var batches = new AtomicLong();
+        final var batchLatencies = new LatencyHistogram(MAX_TRACKED_LATENCY);
+        final var permits = new Semaphore(maxBatchesInFlight);
+        final var consumerFailure = new AtomicReference<Throwable>();
+        final Consumer<List<AddressBalance>> serializedConsumer = results -> {
+            synchronized (resultConsumer) {
+                scanned.addAndGet(results.size());
+                failed.addAndGet(results.stream().filter(result -> result.balance().isEmpty()).count());
+                if (consumerFailure.get() == null) {
+                    Try.run(() -> resultConsumer.accept(results)).onFailure(consumerFailure::set);
+                }
+            }
+        };
+
+        final var batch = new ArrayList<String>(batchSize);
+        final var iterator = addresses.iterator();
+        while (iterator.hasNext()) {
+            final var address = iterator.next();
+            if (!WalletUtils.isValidAddress(address)) {
+                serializedConsumer.accept(List.of(new AddressBalance(address, Option.none())));
+                continue;
+            }
+
+            batch.add(address);
+            if (batch.size() == batchSize) {
+                permits.acquireUninterruptibly();
+                batches.incrementAndGet();
+                sendBatch(List.copyOf(batch), block, batchLatencies, serializedConsumer).whenComplete((ignored, e) -> permits.release());
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            permits.acquireUninterruptibly();
+            batches.incrementAndGet();
+            sendBatch(List.copyOf(batch), block, batchLatencies, serializedConsumer).whenComplete((ignored, e) -> permits.release());
+        }
+
+        // Waits for batches still in flight.
+        permits.acquireUninterruptibly(maxBatchesInFlight);
+        if (consumerFailure.get() != null) {
+            throw new RuntimeException("Couldn't handle balances", consumerFailure.get());
+        }
+        return new ScanResult(blockNumber, scanned.get(), failed.get(), batches.get(), Duration.ofNanos(System.nanoTime() - startTime), batchLatencies);
+    }
+
+    // Balances of the given addresses at the given block, with a single JSON-RPC batch. Never fails: balances that couldn't be retrieved are empty.
+    public CompletableFuture<List<AddressBalance>> getBalancesAsync(List<String> addresses, DefaultBlockParameter block) {
+        final var validAddresses = addresses.stream().filter(WalletUtils::isValidAddress).toList();
+        final var requests = validAddresses.isEmpty()
+                ? CompletableFuture.<List<EthGetBalance>>completedFuture(List.of())
+                : jsonRpcBatchService.sendAsync(validAddresses.stream().map(address -> web3j.ethGetBalance(address, block)).toList());
+
+        return requests.handle((responses, e) -> {
+            if (e != null) {
+                log.warn("Couldn't retrieve balances of {} addresses: {}", validAddresses.size(), e.getMessage());
+            }
+
+            final var results = new ArrayList<AddressBalance>(addresses.size());
+            var responseIndex = 0;
+            for (final var address : addresses) {
+                final var response = WalletUtils.isValidAddress(address) && e == null ? responses.get(responseIndex++) : null;
+                results.add(new AddressBalance(address, Option.of(response).filter(balance -> !balance.hasError()).map(EthGetBalance::getBalance)));
+            }
+            return results;
+        });
+    }
+
+    private CompletableFuture<Void> sendBatch(List<String> addresses, DefaultBlockParameter block, LatencyHistogram batchLatencies,
+                                              Consumer<List<AddressBalance>> resultConsumer) {
+        final var batchStartTime = System.nanoTime();
+        return getBalancesAsync(addresses, block).thenAccept(results -> {
+            batchLatencies.record(Duration.ofNanos(System.nanoTime() - batchStartTime));
+            resultConsumer.accept(results);
+        });
+    }
+
+}
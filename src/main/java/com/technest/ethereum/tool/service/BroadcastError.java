@@ -0,0 +1,42 @@
+package com.technest.ethereum.tool.service;
+
+import java.util.List;
+import java.util.Locale;
+
+// Why a transaction couldn't be broadcast, and whether sending the same signed transaction again may succeed. Nodes word their errors differently, so they
+// are matched against the usual geth, Erigon, Nethermind and Besu messages, in this order.
+public enum BroadcastError {
+    // The node has the transaction already, so it was broadcast before.
+    ALREADY_KNOWN(false, "already known", "known transaction", "already imported", "alreadyknown", "already in pool"),
+    NONCE_TOO_LOW(false, "nonce too low", "oldnonce", "nonce has already been used"),
+    // Fees are part of the signed transaction, so it can only be broadcast again, once the base fee drops.
+    BASE_FEE_TOO_LOW(true, "less than block base fee"),
+    UNDERPRICED(false, "underpriced", "fee too low", "feetoolow", "gas price too low"),
+    INSUFFICIENT_FUNDS(false, "insufficient funds", "insufficientfunds"),
+    // Node or provider temporarily unable to take the transaction, or it couldn't be reached at all.
+    TEMPORARY(true, "rate limit", "too many requests", "txpool is full", "transaction pool is full", "timeout", "timed out", "try again"),
+    REJECTED(false);
+
+    private final boolean retryable;
+    private final List<String> messages;
+
+    BroadcastError(boolean retryable, String... messages) {
+        this.retryable = retryable;
+        this.messages = List.of(messages);
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    public static BroadcastError of(String errorMessage) {
+        final var message = String.valueOf(errorMessage).toLowerCase(Locale.ROOT);
+        for (final var error : values()) {
+            if (error.messages.stream().anyMatch(message::contains)) {
+                return error;
+            }
+        }
+        return REJECTED;
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.journal.JournalRecordType;
+import com.technest.ethereum.tool.journal.TransactionJournal;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.SignedRawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+// Broadcasts signed transactions, keeping the transaction journal and the nonce manager up to date with the outcome. Sending a transaction which was sent
+// before succeeds with its hash, instead of failing with the node error.
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class BroadcastService {
+
+    private static final Set<JournalRecordType> BROADCAST_STATUSES = EnumSet.of(JournalRecordType.BROADCAST, JournalRecordType.CONFIRMED, JournalRecordType.REVERTED);
+
+    private final Web3j web3j;
+    private final JsonRpcBatchService jsonRpcBatchService;
+    private final NonceManager nonceManager;
+    private final TransactionJournal transactionJournal;
+    private final TransactionConfirmationTracker transactionConfirmationTracker;
+
+    // Completes with the transaction hash once the node accepts the transaction, or fails with the node error message if it's rejected.
+    public CompletableFuture<String> broadcastAsync(String signedTxInHex) {
+        return web3j.ethSendRawTransaction(signedTxInHex).sendAsync().thenApply(result -> onBroadcast(signedTxInHex, result).get());
+    }
+
+    // Broadcasts all the transactions with a single JSON-RPC batch, in the given order. Each result is the transaction hash, or a failure with the node error
+    // message, as with broadcastAsync. The whole future fails if the batch couldn't be sent at all.
+    public CompletableFuture<List<Try<String>>> broadcastBatchAsync(List<String> signedTxsInHex) {
+        return jsonRpcBatchService.sendAsync(signedTxsInHex.stream().map(web3j::ethSendRawTransaction).toList())
+                .thenApply(results -> IntStream.range(0, results.size()).mapToObj(i -> onBroadcast(signedTxsInHex.get(i), results.get(i))).toList());
+    }
+
+    // Same as broadcastAsync, but completes once the transaction has been confirmed.
+    public CompletableFuture<TransactionReceipt> broadcastAndWaitAsync(String signedTxInHex) {
+        return broadcastAsync(signedTxInHex).thenCompose(transactionHash -> {
+            log.info("Tx sent with hash: {}", transactionHash);
+            return waitForReceiptAsync(signedTxInHex, transactionHash);
+        });
+    }
+
+    // Completes once the broadcast transaction has been confirmed, recording its receipt in the journal.
+    public CompletableFuture<TransactionReceipt> waitForReceiptAsync(String signedTxInHex, String transactionHash) {
+        return transactionConfirmationTracker.track(transactionHash).thenApply(receipt -> {
+            senderAndNonceOf(signedTxInHex).forEach(transaction -> transactionJournal.recordReceipt(transaction._1, transaction._2, receipt.getTransactionHash(),
+                    receipt.getBlockNumber(), receipt.isStatusOK()));
+            return receipt;
+        });
+    }
+
+    private Try<String> onBroadcast(String signedTxInHex, EthSendTransaction result) {
+        final var senderAndNonce = senderAndNonceOf(signedTxInHex);
+        if (result.hasError()) {
+            final var errorMessage = result.getError().getMessage();
+            final var transactionHash = Hash.sha3(signedTxInHex);
+            if (isSentBefore(transactionHash, errorMessage)) {
+                log.debug("Tx {} was broadcast before: {}", transactionHash, errorMessage);
+                senderAndNonce.filter(ignored -> !isBroadcastInJournal(transactionHash))
+                        .forEach(transaction -> transactionJournal.recordBroadcast(transaction._1, transaction._2, transactionHash, Option.none()));
+                return Try.success(transactionHash);
+            }
+
+            senderAndNonce.forEach(transaction -> {
+                transactionJournal.recordBroadcast(transaction._1, transaction._2, transactionHash, Option.of(errorMessage));
+                nonceManager.onBroadcastFailed(transaction._1, transaction._2, errorMessage);
+            });
+            return Try.failure(new RuntimeException(errorMessage));
+        }
+
+        senderAndNonce.forEach(transaction -> transactionJournal.recordBroadcast(transaction._1, transaction._2, result.getTransactionHash(), Option.none()));
+        return Try.success(result.getTransactionHash());
+    }
+
+    // The node has this very transaction when it's already known. Nonce too low for a transaction the journal has as broadcast means it's been mined since
+    // (e.g. the same file broadcast again), which mustn't count as a failure, nor make the nonce manager resync the sender.
+    private boolean isSentBefore(String transactionHash, String errorMessage) {
+        final var error = BroadcastError.of(errorMessage);
+        return error == BroadcastError.ALREADY_KNOWN || (error == BroadcastError.NONCE_TOO_LOW && isBroadcastInJournal(transactionHash));
+    }
+
+    private boolean isBroadcastInJournal(String transactionHash) {
+        return transactionJournal.findByHash(transactionHash).exists(transaction -> transactionHash.equalsIgnoreCase(transaction.transactionHash())
+                && BROADCAST_STATUSES.contains(transaction.status()));
+    }
+
+    private static Option<Tuple2<String, BigInteger>> senderAndNonceOf(String signedTxInHex) {
+        return Try.of(() -> TransactionDecoder.decode(signedTxInHex))
+                .filter(SignedRawTransaction.class::isInstance)
+                .map(SignedRawTransaction.class::cast)
+                .mapTry(transaction -> Tuple.of(transaction.getFrom(), transaction.getNonce()))
+                .onFailure(e -> log.warn("Couldn't get sender of the transaction", e))
+                .toOption();
+    }
+
+}
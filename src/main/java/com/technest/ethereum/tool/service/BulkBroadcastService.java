@@ -0,0 +1,319 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.configuration.BulkBroadcastConfigProperties;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.SignedRawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+
+// Broadcasts a file of signed raw transactions, one per line (or the last field of every line, as written by addSignToUnsignedRawEthereumTxBatch), and
+// writes a report with the outcome of every transaction.
+// Transactions are sent in waves: every wave takes up to batchSize transactions of every sender, in nonce order, and packs them in eth_sendRawTransaction
+// JSON-RPC batches, with up to batchesInFlight batches at a time. Transactions of a sender are never split across batches sent at the same time, and its
+// next ones wait for the following wave, so nodes always get them in nonce order.
+// Retryable errors (base fee too low, rate limits, unreachable node...) are sent again after retryDelay, up to maxAttempts, and the remaining transactions of a
+// sender are skipped once one of them fails for good, as they could never be mined. Transactions of the sender after the failed nonce which were broadcast
+// already are reported as stuck, for the same reason. Transactions the node knows already, or whose nonce was used by themselves (i.e. the same file
+// broadcast again), count as broadcast. Receipts of every broadcast transaction which isn't stuck are then waited for together.
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class BulkBroadcastService {
+
+    private final Web3j web3j;
+    private final JsonRpcBatchService jsonRpcBatchService;
+    private final BroadcastService broadcastService;
+    private final BulkBroadcastConfigProperties properties;
+
+    public enum Status {
+        BROADCAST, CONFIRMED, REVERTED, NOT_CONFIRMED, FAILED, SKIPPED, STUCK, INVALID
+    }
+
+    public record Result(long transactions, long broadcast, long confirmed, long failed, long batches, Duration elapsed) {
+
+        public double transactionsPerSecond() {
+            return elapsed.isZero() ? transactions : transactions * 1000.0 / elapsed.toMillis();
+        }
+
+    }
+
+    public Result broadcastFile(Path inputFile, Path reportFile, boolean waitForReceipts) {
+        final var startTime = System.nanoTime();
+        final var transactions = read(inputFile);
+        final var batches = new AtomicLong();
+
+        var pending = transactions.stream().filter(transaction -> transaction.status == null).toList();
+        for (int attempt = 1; attempt <= properties.getMaxAttempts() && !pending.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                log.info("Sending {} transactions again in {} s", pending.size(), properties.getRetryDelay().toSeconds());
+                Try.run(() -> Thread.sleep(properties.getRetryDelay().toMillis()));
+            }
+            broadcastInWaves(pending, batches);
+            findAlreadyMined(pending);
+            pending = pending.stream().filter(transaction -> transaction.status == Status.FAILED && transaction.error.isRetryable()).toList();
+        }
+        markStuck(transactions);
+
+        if (waitForReceipts) {
+            waitForReceipts(transactions);
+        }
+        writeReport(reportFile, transactions);
+
+        final var broadcast = transactions.stream().filter(transaction -> transaction.transactionHash != null).count();
+        final var confirmed = transactions.stream().filter(transaction -> transaction.status == Status.CONFIRMED).count();
+        return new Result(transactions.size(), broadcast, confirmed, transactions.size() - broadcast, batches.get(), Duration.ofNanos(System.nanoTime() - startTime));
+    }
+
+    private void broadcastInWaves(List<BroadcastTransaction> transactions, AtomicLong batches) {
+        final var queuesBySender = transactions.stream()
+                .sorted(Comparator.comparing((BroadcastTransaction transaction) -> transaction.nonce))
+                .collect(Collectors.groupingBy(transaction -> transaction.sender, LinkedHashMap::new, Collectors.toCollection(ArrayDeque::new)));
+        final var permits = new Semaphore(properties.getBatchesInFlight());
+
+        while (queuesBySender.values().stream().anyMatch(queue -> !queue.isEmpty())) {
+            final var wave = new ArrayList<List<BroadcastTransaction>>();
+            queuesBySender.values().forEach(queue -> {
+                final var senderTransactions = new ArrayList<BroadcastTransaction>();
+                while (senderTransactions.size() < properties.getBatchSize() && !queue.isEmpty()) {
+                    senderTransactions.add(queue.poll());
+                }
+                if (!senderTransactions.isEmpty()) {
+                    wave.add(senderTransactions);
+                }
+            });
+
+            final var futures = pack(wave).stream().map(batch -> {
+                permits.acquireUninterruptibly();
+                batches.incrementAndGet();
+                return send(batch).whenComplete((ignored, e) -> permits.release());
+            }).toList();
+            futures.forEach(CompletableFuture::join);
+
+            wave.forEach(senderTransactions -> senderTransactions.stream()
+                    .filter(BroadcastTransaction::failedForGood)
+                    .findFirst()
+                    .ifPresent(failed -> skipRemaining(queuesBySender.get(failed.sender), failed)));
+        }
+    }
+
+    // Packs transactions of several senders in batches of up to batchSize transactions, keeping the ones of each sender together.
+    private List<List<BroadcastTransaction>> pack(List<List<BroadcastTransaction>> wave) {
+        final var batches = new ArrayList<List<BroadcastTransaction>>();
+        var batch = new ArrayList<BroadcastTransaction>();
+        for (final var senderTransactions : wave) {
+            if (batch.size() + senderTransactions.size() > properties.getBatchSize()) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+            batch.addAll(senderTransactions);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private CompletableFuture<Void> send(List<BroadcastTransaction> batch) {
+        batch.forEach(transaction -> transaction.attempts++);
+        return broadcastService.broadcastBatchAsync(batch.stream().map(transaction -> transaction.signedTransaction).toList()).handle((results, e) -> {
+            for (int i = 0; i < batch.size(); i++) {
+                final var transaction = batch.get(i);
+                if (e != null) {
+                    // The whole batch couldn't be sent, so none of its transactions may have made it to the node.
+                    transaction.fail(BroadcastError.TEMPORARY, Option.of(e.getCause()).getOrElse(e).getMessage());
+                } else {
+                    results.get(i)
+                            .onSuccess(transaction::broadcast)
+                            .onFailure(failure -> transaction.fail(BroadcastError.of(failure.getMessage()), failure.getMessage()));
+                }
+            }
+            return null;
+        });
+    }
+
+    private static void skipRemaining(ArrayDeque<BroadcastTransaction> queue, BroadcastTransaction failed) {
+        if (!queue.isEmpty()) {
+            log.warn("Skipping {} transactions of {} after nonce {}, which failed with: {}", queue.size(), failed.sender, failed.nonce, failed.errorMessage);
+        }
+        while (!queue.isEmpty()) {
+            final var skipped = queue.poll();
+            skipped.status = Status.SKIPPED;
+            skipped.errorMessage = "Nonce " + failed.nonce + " of the sender failed";
+        }
+    }
+
+    // Nonces following one that couldn't be broadcast (for good, or after every attempt) can't be mined until it's filled, so they aren't waited for.
+    private static void markStuck(List<BroadcastTransaction> transactions) {
+        final var firstFailedBySender = transactions.stream()
+                .filter(BroadcastTransaction::blocksFollowingNonces)
+                .collect(Collectors.toMap(transaction -> transaction.sender, transaction -> transaction,
+                        BinaryOperator.minBy(Comparator.comparing((BroadcastTransaction transaction) -> transaction.nonce))));
+
+        final var stuck = transactions.stream()
+                .filter(transaction -> transaction.status == Status.BROADCAST)
+                .filter(transaction -> Option.of(firstFailedBySender.get(transaction.sender)).exists(failed -> transaction.nonce.compareTo(failed.nonce) > 0))
+                .toList();
+        stuck.forEach(transaction -> {
+            final var failed = firstFailedBySender.get(transaction.sender);
+            transaction.status = Status.STUCK;
+            transaction.errorMessage = "Nonce " + failed.nonce + " of the sender failed";
+        });
+        if (!stuck.isEmpty()) {
+            log.warn("{} broadcast transactions are stuck behind a nonce of their sender which failed, their receipts won't be waited for", stuck.size());
+        }
+    }
+
+    // A nonce too low error for a transaction that's been mined already just means it was broadcast before.
+    private void findAlreadyMined(List<BroadcastTransaction> transactions) {
+        final var nonceTooLow = transactions.stream()
+                .filter(transaction -> transaction.status == Status.FAILED && transaction.error == BroadcastError.NONCE_TOO_LOW)
+                .toList();
+
+        io.vavr.collection.List.ofAll(nonceTooLow).grouped(properties.getBatchSize()).forEach(chunk -> Try
+                .of(() -> jsonRpcBatchService.send(chunk.map(transaction -> web3j.ethGetTransactionReceipt(transaction.localHash)).asJava()))
+                .onFailure(e -> log.warn("Couldn't check if transactions with a nonce too low were mined already", e))
+                .forEach(responses -> {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        final var transaction = chunk.get(i);
+                        responses.get(i).getTransactionReceipt().ifPresent(receipt -> transaction.broadcast(transaction.localHash));
+                    }
+                }));
+    }
+
+    private void waitForReceipts(List<BroadcastTransaction> transactions) {
+        final var futures = transactions.stream()
+                .filter(transaction -> transaction.status == Status.BROADCAST)
+                .map(transaction -> broadcastService.waitForReceiptAsync(transaction.signedTransaction, transaction.transactionHash).handle((receipt, e) -> {
+                    if (e != null) {
+                        transaction.status = Status.NOT_CONFIRMED;
+                        transaction.errorMessage = Option.of(e.getCause()).getOrElse(e).getMessage();
+                    } else {
+                        transaction.receipt = receipt;
+                        transaction.status = receipt.isStatusOK() ? Status.CONFIRMED : Status.REVERTED;
+                    }
+                    return null;
+                }))
+                .toList();
+
+        log.info("Waiting for receipts of {} transactions", futures.size());
+        futures.forEach(CompletableFuture::join);
+    }
+
+    private static List<BroadcastTransaction> read(Path inputFile) {
+        try (final var lines = Files.lines(inputFile)) {
+            final var lineNumber = new AtomicLong();
+            return lines
+                    .map(line -> parse(lineNumber.incrementAndGet(), line.trim()))
+                    .flatMap(Option::toJavaStream)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read signed transactions from " + inputFile, e);
+        }
+    }
+
+    // Blank lines, lines starting with '#' and a header line are skipped.
+    private static Option<BroadcastTransaction> parse(long lineNumber, String line) {
+        final var signedTransaction = line.substring(line.lastIndexOf(',') + 1).trim();
+        if (line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && !signedTransaction.startsWith("0x"))) {
+            return Option.none();
+        }
+
+        final var transaction = new BroadcastTransaction(lineNumber, signedTransaction);
+        Try.of(() -> (SignedRawTransaction) TransactionDecoder.decode(signedTransaction))
+                .andThenTry(decoded -> {
+                    transaction.sender = decoded.getFrom().toLowerCase(Locale.ROOT);
+                    transaction.nonce = decoded.getNonce();
+                    transaction.localHash = Hash.sha3(signedTransaction);
+                })
+                .onFailure(e -> {
+                    transaction.status = Status.INVALID;
+                    transaction.errorMessage = "Not a signed raw transaction: " + e.getMessage();
+                });
+        return Option.of(transaction);
+    }
+
+    private static void writeReport(Path reportFile, List<BroadcastTransaction> transactions) {
+        final var lines = new ArrayList<String>(transactions.size() + 1);
+        lines.add("line,sender,nonce,transactionHash,status,attempts,blockNumber,gasUsed,error");
+        transactions.forEach(transaction -> lines.add(String.join(",",
+                String.valueOf(transaction.lineNumber),
+                Option.of(transaction.sender).getOrElse(""),
+                Option.of(transaction.nonce).map(BigInteger::toString).getOrElse(""),
+                Option.of(transaction.transactionHash).getOrElse(""),
+                transaction.status.name(),
+                String.valueOf(transaction.attempts),
+                Option.of(transaction.receipt).map(TransactionReceipt::getBlockNumber).map(BigInteger::toString).getOrElse(""),
+                Option.of(transaction.receipt).map(TransactionReceipt::getGasUsed).map(BigInteger::toString).getOrElse(""),
+                Option.of(transaction.errorMessage)
+                        .map(message -> Option.of(transaction.error).map(error -> error + ": ").getOrElse("") + message.replace(',', ' '))
+                        .getOrElse(""))));
+
+        Try.run(() -> Files.write(reportFile, lines)).getOrElseThrow(e -> new RuntimeException("Couldn't write broadcast report to " + reportFile, e));
+    }
+
+    private static final class BroadcastTransaction {
+        private final long lineNumber;
+        private final String signedTransaction;
+        private String sender;
+        private BigInteger nonce;
+        private String localHash;
+        private volatile Status status;
+        private volatile BroadcastError error;
+        private volatile String errorMessage;
+        private volatile String transactionHash;
+        private volatile TransactionReceipt receipt;
+        private int attempts;
+
+        private BroadcastTransaction(long lineNumber, String signedTransaction) {
+            this.lineNumber = lineNumber;
+            this.signedTransaction = signedTransaction;
+        }
+
+        private void broadcast(String hash) {
+            status = Status.BROADCAST;
+            transactionHash = hash;
+            error = null;
+            errorMessage = null;
+        }
+
+        private void fail(BroadcastError broadcastError, String message) {
+            status = Status.FAILED;
+            error = broadcastError;
+            errorMessage = message;
+        }
+
+        private boolean failedForGood() {
+            return blocksFollowingNonces() && !error.isRetryable();
+        }
+
+        // A nonce too low is filled already, by some other transaction.
+        private boolean blocksFollowingNonces() {
+            return status == Status.FAILED && error != BroadcastError.NONCE_TOO_LOW;
+        }
+    }
+
+}
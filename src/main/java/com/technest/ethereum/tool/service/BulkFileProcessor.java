@@ -0,0 +1,108 @@
+package com.technest.ethereum.tool.service;
+
+import io.vavr.control.Try;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// Processes an input file line by line, with a bounded number of lines being processed at the same time, writing each result to the output file as soon as
+// it's ready. A line is only read when there's room to process it, so memory stays flat regardless of the input size.
+// Results are written in completion order, prefixed with the line number they come from. Blank lines and lines starting with '#' are skipped.
+// Failing to write a result (e.g. the disk is full) stops reading lines, and fails the whole file once the lines in flight are done.
+@Log4j2
+@Component
+public class BulkFileProcessor {
+
+    public record Result(long processed, long failed, Duration elapsed) {
+
+        public double linesPerSecond() {
+            return elapsed.isZero() ? processed : processed * 1000.0 / elapsed.toMillis();
+        }
+
+    }
+
+    public Result process(Path inputFile, Path outputFile, String outputHeader, int concurrency, Function<String, String> lineProcessor) {
+        checkArgument(concurrency >= 1, "Concurrency must be at least 1 but was %s", concurrency);
+        final var startTime = System.nanoTime();
+        final var processed = new AtomicLong();
+        final var failed = new AtomicLong();
+        final var permits = new Semaphore(concurrency);
+        final var writeFailure = new AtomicReference<UncheckedIOException>();
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+
+        try (final var lines = Files.lines(inputFile); final var writer = Files.newBufferedWriter(outputFile)) {
+            writeLine(writer, "line," + outputHeader);
+
+            final var lineNumber = new AtomicLong();
+            try {
+                lines.forEachOrdered(line -> {
+                    final var currentLineNumber = lineNumber.incrementAndGet();
+                    if (line.isBlank() || line.startsWith("#")) {
+                        return;
+                    }
+
+                    permits.acquireUninterruptibly();
+                    if (writeFailure.get() != null) {
+                        permits.release();
+                        throw writeFailure.get();
+                    }
+                    executor.execute(() -> {
+                        try {
+                            final var result = Try.of(() -> lineProcessor.apply(line.trim()))
+                                    .onFailure(e -> {
+                                        failed.incrementAndGet();
+                                        log.warn("Couldn't process line {} of {}: {}", currentLineNumber, inputFile, e.getMessage());
+                                    })
+                                    .getOrElseGet(e -> "ERROR," + String.valueOf(e.getMessage()).replace(',', ' '));
+                            writeLine(writer, currentLineNumber + "," + result);
+                            processed.incrementAndGet();
+                        } catch (IOException e) {
+                            writeFailure.compareAndSet(null, new UncheckedIOException("Couldn't write result of line " + currentLineNumber, e));
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                });
+            } finally {
+                // Waiting for all permits means every line has been processed, so results of the lines in flight are written before the output file is
+                // closed, even when reading the input failed halfway (e.g. it isn't valid UTF-8).
+                permits.acquireUninterruptibly(concurrency);
+            }
+            if (writeFailure.get() != null) {
+                throw writeFailure.get();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't process " + inputFile, e);
+        } catch (UncheckedIOException e) {
+            throw new UncheckedIOException("Couldn't process " + inputFile + ": " + e.getMessage(), e.getCause());
+        } finally {
+            executor.shutdown();
+            Try.run(() -> executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        return new Result(processed.get(), failed.get(), Duration.ofNanos(System.nanoTime() - startTime));
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        synchronized (writer) {
+            writer.write(line);
+            writer.newLine();
+        }
+    }
+
+}
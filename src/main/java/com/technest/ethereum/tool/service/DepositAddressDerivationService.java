@@ -0,0 +1,184 @@
+package com.technest.ethereum.tool.service;
+
+import io.vavr.control.Option;
+import lombok.extern.log4j.Log4j2;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.params.TestNet3Params;
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.springframework.stereotype.Service;
+import org.web3j.utils.Numeric;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+// Derives deposit addresses in bulk from an extended public key (xpub), i.e. the addresses of its non-hardened children xpub/fromIndex .. xpub/toIndex.
+// Children are derived in parallel with fork/join, a chunk at a time, and written to a CSV file as every chunk is finished. Every worker thread reuses its
+// HMAC, Keccak digest and buffers, so deriving an address only allocates what the elliptic curve arithmetic needs.
+// Addresses from the last derivation are kept in an off-heap address -> index table, so incoming payments can be matched to a deposit index in O(1).
+@Log4j2
+@Service
+public class DepositAddressDerivationService {
+
+    private static final int ADDRESS_LENGTH = 20;
+    private static final int CHUNK_SIZE = 65_536;
+    private static final int LEAF_SIZE = 256;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private volatile AddressIndexTable addressIndexTable;
+
+    public record Result(long derived, Duration elapsed, long lookupTableMemory) {
+
+        public double addressesPerSecond() {
+            return elapsed.isZero() ? derived : derived * 1000.0 / elapsed.toMillis();
+        }
+
+    }
+
+    public Result deriveToFile(String xpub, int fromIndex, int count, Path outputFile) {
+        checkArgument(fromIndex >= 0 && count > 0 && (long) fromIndex + count <= Integer.MAX_VALUE, "Index range must be within 0 and 2^31 - 1");
+
+        final var startTime = System.nanoTime();
+        final var parentKey = deserializeXpub(xpub);
+        final var table = new AddressIndexTable(count);
+        final var addresses = new byte[Math.min(count, CHUNK_SIZE) * ADDRESS_LENGTH];
+        final var workers = ThreadLocal.withInitial(() -> new ChildAddressDeriver(parentKey));
+
+        try (final var writer = Files.newBufferedWriter(outputFile)) {
+            writer.write("index,address");
+            writer.newLine();
+
+            for (int chunkStart = 0; chunkStart < count; chunkStart += CHUNK_SIZE) {
+                final var chunkSize = Math.min(CHUNK_SIZE, count - chunkStart);
+                pool.invoke(new DeriveTask(workers, addresses, fromIndex + chunkStart, 0, chunkSize));
+                writeChunk(writer, table, addresses, fromIndex + chunkStart, chunkSize);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write derived addresses to " + outputFile, e);
+        }
+
+        addressIndexTable = table;
+        final var result = new Result(count, Duration.ofNanos(System.nanoTime() - startTime), table.getMemoryUsage());
+        log.info("Derived {} addresses from index {} in {} ms", count, fromIndex, result.elapsed().toMillis());
+        return result;
+    }
+
+    // Index the address was derived with, if it's one of the addresses from the last derivation.
+    public Option<Integer> findIndex(String address) {
+        final var table = addressIndexTable;
+        checkState(table != null, "No deposit addresses have been derived yet");
+
+        final var index = table.get(Numeric.hexStringToByteArray(address));
+        return Option.when(index >= 0, index);
+    }
+
+    private static void writeChunk(BufferedWriter writer, AddressIndexTable table, byte[] addresses, int firstIndex, int chunkSize) throws IOException {
+        final var line = new StringBuilder(64);
+        for (int i = 0; i < chunkSize; i++) {
+            final var index = firstIndex + i;
+            table.put(addresses, i * ADDRESS_LENGTH, index);
+
+            line.setLength(0);
+            line.append(index).append(",0x");
+            for (int j = i * ADDRESS_LENGTH; j < (i + 1) * ADDRESS_LENGTH; j++) {
+                line.append(Character.forDigit((addresses[j] >> 4) & 0xf, 16)).append(Character.forDigit(addresses[j] & 0xf, 16));
+            }
+            writer.append(line);
+            writer.newLine();
+        }
+    }
+
+    private static DeterministicKey deserializeXpub(String xpub) {
+        final var params = xpub.startsWith("tpub") ? TestNet3Params.get() : MainNetParams.get();
+        return DeterministicKey.deserializeB58(xpub.trim(), params);
+    }
+
+    // Non-hardened BIP-32 child derivation straight to an Ethereum address: K_i = parse256(IL) * G + K_par, with IL being the left half of
+    // HMAC-SHA512(chainCode, serP(K_par) || ser32(i)).
+    private static final class ChildAddressDeriver {
+
+        private final FixedPointCombMultiplier multiplier = new FixedPointCombMultiplier();
+        private final HMac hmac = new HMac(new SHA512Digest());
+        private final KeccakDigest keccak = new KeccakDigest(256);
+        private final ECPoint parentPoint;
+        private final byte[] hmacInput = new byte[33 + 4];
+        private final byte[] hmacOutput = new byte[64];
+        private final byte[] hash = new byte[32];
+
+        private ChildAddressDeriver(DeterministicKey parentKey) {
+            this.parentPoint = parentKey.getPubKeyPoint();
+            hmac.init(new KeyParameter(parentKey.getChainCode()));
+            System.arraycopy(parentKey.getPubKey(), 0, hmacInput, 0, 33);
+        }
+
+        private void deriveAddress(int index, byte[] addresses, int offset) {
+            hmacInput[33] = (byte) (index >>> 24);
+            hmacInput[34] = (byte) (index >>> 16);
+            hmacInput[35] = (byte) (index >>> 8);
+            hmacInput[36] = (byte) index;
+            hmac.update(hmacInput, 0, hmacInput.length);
+            hmac.doFinal(hmacOutput, 0);
+
+            final var il = new BigInteger(1, hmacOutput, 0, 32);
+            // Probability of this happening is lower than 1 in 2^127, BIP-32 says to go on with the next index, but then indexes wouldn't match addresses.
+            checkState(il.compareTo(ECKey.CURVE.getN()) < 0, "Invalid child key at index " + index);
+            final var childPoint = multiplier.multiply(ECKey.CURVE.getG(), il).add(parentPoint).normalize();
+            checkState(!childPoint.isInfinity(), "Invalid child key at index " + index);
+
+            // Ethereum address is the last 20 bytes of the Keccak-256 hash of the uncompressed public key, without its leading 0x04.
+            final var uncompressedPublicKey = childPoint.getEncoded(false);
+            keccak.update(uncompressedPublicKey, 1, uncompressedPublicKey.length - 1);
+            keccak.doFinal(hash, 0);
+            System.arraycopy(hash, hash.length - ADDRESS_LENGTH, addresses, offset, ADDRESS_LENGTH);
+        }
+
+    }
+
+    private static final class DeriveTask extends RecursiveAction {
+
+        private final ThreadLocal<ChildAddressDeriver> workers;
+        private final byte[] addresses;
+        private final int firstIndex;
+        private final int from;
+        private final int to;
+
+        private DeriveTask(ThreadLocal<ChildAddressDeriver> workers, byte[] addresses, int firstIndex, int from, int to) {
+            this.workers = workers;
+            this.addresses = addresses;
+            this.firstIndex = firstIndex;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                final var worker = workers.get();
+                for (int i = from; i < to; i++) {
+                    worker.deriveAddress(firstIndex + i, addresses, i * ADDRESS_LENGTH);
+                }
+            } else {
+                final var middle = (from + to) >>> 1;
+                invokeAll(new DeriveTask(workers, addresses, firstIndex, from, middle), new DeriveTask(workers, addresses, firstIndex, middle, to));
+            }
+        }
+
+    }
+
+}
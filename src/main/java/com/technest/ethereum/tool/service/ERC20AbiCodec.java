@@ -0,0 +1,129 @@
+package com.technest.ethereum.tool.service;
+
+import org.web3j.tx.exceptions.ContractCallException;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// ABI encoding of the ERC-20 calls the tool makes (transfer, balanceOf, decimals, name, symbol) and decoding of their results. Arguments are written at
+// their offsets straight into a reusable per-thread buffer, and results are read from the returned bytes, instead of going through web3j's reflection based
+// type encoders and decoders for every call. Encoded call data is the same, byte for byte, as web3j's FunctionEncoder.
+final class ERC20AbiCodec {
+
+    // transfer(address,uint256)
+    static final byte[] TRANSFER_SELECTOR = Numeric.hexStringToByteArray("a9059cbb");
+    // balanceOf(address)
+    static final byte[] BALANCE_OF_SELECTOR = Numeric.hexStringToByteArray("70a08231");
+    static final String DECIMALS_CALL = "0x313ce567";
+    static final String NAME_CALL = "0x06fdde03";
+    static final String SYMBOL_CALL = "0x95d89b41";
+
+    private static final int WORD = 32;
+    private static final int ADDRESS_LENGTH = 20;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[4 + 2 * WORD]);
+
+    private ERC20AbiCodec() {
+    }
+
+    static String encodeTransfer(String to, BigInteger value) {
+        checkArgument(value.signum() >= 0 && value.bitLength() <= 256, "Invalid uint256 value: %s", value);
+        final var data = clearedBuffer();
+        System.arraycopy(TRANSFER_SELECTOR, 0, data, 0, 4);
+        writeAddress(data, 4, to);
+
+        final var valueBytes = value.toByteArray();
+        // toByteArray adds a leading zero byte when the highest bit is set, which isn't part of the uint256.
+        final var skip = valueBytes.length > WORD ? valueBytes.length - WORD : 0;
+        System.arraycopy(valueBytes, skip, data, 4 + 2 * WORD - (valueBytes.length - skip), valueBytes.length - skip);
+        return Numeric.toHexString(data, 0, 4 + 2 * WORD, true);
+    }
+
+    static String encodeBalanceOf(String address) {
+        final var data = clearedBuffer();
+        System.arraycopy(BALANCE_OF_SELECTOR, 0, data, 0, 4);
+        writeAddress(data, 4, address);
+        return Numeric.toHexString(data, 0, 4 + WORD, true);
+    }
+
+    static BigInteger decodeUint256(String returnData) {
+        final var data = nonEmpty(returnData);
+        return new BigInteger(1, data, 0, WORD);
+    }
+
+    static BigInteger decodeUint8(String returnData) {
+        final var value = decodeUint256(returnData);
+        if (value.bitLength() > 8) {
+            throw new ContractCallException("Invalid uint8 returned from contract: " + value);
+        }
+        return value;
+    }
+
+    // Some early tokens (e.g. MKR) return their name and symbol as bytes32 instead of string, so a single word is read as a zero padded UTF-8 string.
+    static String decodeString(String returnData) {
+        final var data = nonEmpty(returnData);
+        if (data.length == WORD) {
+            var length = 0;
+            while (length < WORD && data[length] != 0) {
+                length++;
+            }
+            return new String(data, 0, length, StandardCharsets.UTF_8);
+        }
+
+        final var offset = readInt(data, 0);
+        final var length = readInt(data, offset);
+        // Summed as longs, as offset and length can be up to Integer.MAX_VALUE each.
+        if ((long) offset + WORD + length > data.length) {
+            throw new ContractCallException("Malformed string returned from contract");
+        }
+        return new String(data, offset + WORD, length, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] clearedBuffer() {
+        final var data = BUFFER.get();
+        Arrays.fill(data, (byte) 0);
+        return data;
+    }
+
+    private static void writeAddress(byte[] data, int position, String address) {
+        final var cleanAddress = Numeric.cleanHexPrefix(address);
+        checkArgument(cleanAddress.length() == 2 * ADDRESS_LENGTH, "Invalid address: %s", address);
+        final var start = position + WORD - ADDRESS_LENGTH;
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            final var high = Character.digit(cleanAddress.charAt(2 * i), 16);
+            final var low = Character.digit(cleanAddress.charAt(2 * i + 1), 16);
+            checkArgument(high >= 0 && low >= 0, "Invalid address: %s", address);
+            data[start + i] = (byte) (high << 4 | low);
+        }
+    }
+
+    // Same as web3j, an empty result (e.g. the contract doesn't have the function) fails the call.
+    private static byte[] nonEmpty(String returnData) {
+        final var data = returnData == null ? new byte[0] : Numeric.hexStringToByteArray(returnData);
+        if (data.length < WORD) {
+            throw new ContractCallException("Empty value returned from contract");
+        }
+        return data;
+    }
+
+    // Offsets and lengths always fit in an int, anything bigger means the result is malformed.
+    private static int readInt(byte[] data, int position) {
+        if (position < 0 || (long) position + WORD > data.length) {
+            throw new ContractCallException("Malformed string returned from contract");
+        }
+        for (int i = 0; i < WORD - Integer.BYTES; i++) {
+            if (data[position + i] != 0) {
+                throw new ContractCallException("Malformed string returned from contract");
+            }
+        }
+        final var value = (data[position + 28] & 0xff) << 24 | (data[position + 29] & 0xff) << 16 | (data[position + 30] & 0xff) << 8 | (data[position + 31] & 0xff);
+        if (value < 0) {
+            throw new ContractCallException("Malformed string returned from contract");
+        }
+        return value;
+    }
+
+}
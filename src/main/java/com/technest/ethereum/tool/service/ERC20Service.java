@@ -1,104 +1,155 @@
 package com.technest.ethereum.tool.service;
 
-import io.vavr.control.Option;
-import io.vavr.control.Try;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.web3j.abi.FunctionEncoder;
-import org.web3j.abi.FunctionReturnDecoder;
-import org.web3j.abi.TypeReference;
-import org.web3j.abi.datatypes.Address;
-import org.web3j.abi.datatypes.Function;
-import org.web3j.abi.datatypes.Type;
-import org.web3j.abi.datatypes.Utf8String;
-import org.web3j.abi.datatypes.generated.Uint256;
-import org.web3j.abi.datatypes.generated.Uint8;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.DefaultBlockParameterName;
 import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
 import org.web3j.tx.exceptions.ContractCallException;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 @Service
 @RequiredArgsConstructor
 public class ERC20Service {
 
+    private static final List<ERC20Call> METADATA_CALLS = List.of(
+            new ERC20Call("name", ERC20AbiCodec.NAME_CALL),
+            new ERC20Call("symbol", ERC20AbiCodec.SYMBOL_CALL),
+            new ERC20Call("decimals", ERC20AbiCodec.DECIMALS_CALL)
+    );
+
     private final Web3j web3j;
+    private final JsonRpcBatchService jsonRpcBatchService;
+    private final ERC20TokenMetadataCache tokenMetadataCache;
+    private final Map<String, CompletableFuture<ERC20TokenMetadata>> metadataRequestsInFlight = new ConcurrentHashMap<>();
 
-    public Function buildTransferFunction(String to, BigInteger value) {
-        return buildERC20Function(
-                "transfer",
-                List.of(new org.web3j.abi.datatypes.Address(to), new org.web3j.abi.datatypes.generated.Uint256(value)),
-                Collections.emptyList()
-        );
+    // Call data of transfer(to, value).
+    public String encodeTransfer(String to, BigInteger value) {
+        return ERC20AbiCodec.encodeTransfer(to, value);
     }
 
     public String getTokenSymbol(String contractAddress, String address) {
-        final var symbolFunction = buildERC20Function("symbol", Collections.emptyList(), List.of(new TypeReference<Utf8String>() {}));
-        return executeERC20Call(symbolFunction, address, contractAddress, String.class);
+        return getTokenMetadata(contractAddress, address).symbol();
     }
 
     public String getTokenName(String contractAddress, String address) {
-        final var nameFunction = buildERC20Function("name", Collections.emptyList(), List.of(new TypeReference<Utf8String>() {}));
-        return executeERC20Call(nameFunction, address, contractAddress, String.class);
+        return getTokenMetadata(contractAddress, address).name();
     }
 
     public BigInteger getTokenDecimals(String contractAddress, String address) {
-        final var decimalsFunction = buildERC20Function("decimals", Collections.emptyList(), List.of(new TypeReference<Uint8>() {}));
-        return executeERC20Call(decimalsFunction, address, contractAddress, BigInteger.class);
+        return getTokenMetadata(contractAddress, address).decimals();
+    }
+
+    public ERC20TokenMetadata getTokenMetadata(String contractAddress, String address) {
+        return Futures.join(getTokenMetadataAsync(contractAddress, address));
+    }
+
+    // Concurrent lookups of a token which isn't cached yet share a single request.
+    public CompletableFuture<ERC20TokenMetadata> getTokenMetadataAsync(String contractAddress, String address) {
+        return tokenMetadataCache.getIfPresent(contractAddress)
+                .map(CompletableFuture::completedFuture)
+                .getOrElse(() -> {
+                    final var key = contractAddress.toLowerCase(Locale.ROOT);
+                    final var future = new CompletableFuture<ERC20TokenMetadata>();
+                    final var inFlight = metadataRequestsInFlight.putIfAbsent(key, future);
+                    if (inFlight != null) {
+                        return inFlight;
+                    }
+
+                    executeERC20BatchCallAsync(METADATA_CALLS, address, contractAddress)
+                            .thenApply(this::toTokenMetadata)
+                            .whenComplete((metadata, e) -> {
+                                if (e == null) {
+                                    tokenMetadataCache.put(contractAddress, metadata);
+                                }
+                                metadataRequestsInFlight.remove(key, future);
+                                if (e == null) {
+                                    future.complete(metadata);
+                                } else {
+                                    future.completeExceptionally(e);
+                                }
+                            });
+                    return future;
+                });
     }
 
     public BigInteger getBalanceOf(String contractAddress, String address) {
-        final var balanceFunction = buildERC20Function("balanceOf", List.of(new Address(address)), List.of(new TypeReference<Uint256>() {}));
-        return executeERC20Call(balanceFunction, address, contractAddress, BigInteger.class);
+        return Futures.join(getBalanceOfAsync(contractAddress, address));
     }
 
-    public BigInteger scaleToTokenUnitsWithoutDecimals(String contractAddress, String address, BigDecimal value) {
-        final var tokenDecimals = getTokenDecimals(contractAddress, address);
-        return value.multiply(BigDecimal.TEN.pow(tokenDecimals.intValue())).toBigIntegerExact();
+    public CompletableFuture<BigInteger> getBalanceOfAsync(String contractAddress, String address) {
+        return web3j.ethCall(Transaction.createEthCallTransaction(address, contractAddress, ERC20AbiCodec.encodeBalanceOf(address)), DefaultBlockParameterName.LATEST)
+                .sendAsync()
+                .thenApply(response -> ERC20AbiCodec.decodeUint256(getCallResult("balanceOf", response)));
     }
 
-    private Function buildERC20Function(String functionName, List<Type> inputParameters, List<TypeReference<?>> outputParameters) {
-        return new Function(functionName, inputParameters, outputParameters);
+    // Retrieves token name, symbol, decimals and balance of the given address with a single round trip to the node (or just the balance, if token metadata
+    // is already cached).
+    public ERC20TokenBalance getTokenBalance(String contractAddress, String address) {
+        return tokenMetadataCache.getIfPresent(contractAddress)
+                .map(metadata -> new ERC20TokenBalance(metadata.name(), metadata.symbol(), metadata.decimals(), getBalanceOf(contractAddress, address)))
+                .getOrElse(() -> {
+                    final var calls = new ArrayList<>(METADATA_CALLS);
+                    calls.add(new ERC20Call("balanceOf", ERC20AbiCodec.encodeBalanceOf(address)));
+                    final var results = executeERC20BatchCall(calls, address, contractAddress);
+                    final var metadata = toTokenMetadata(results);
+                    tokenMetadataCache.put(contractAddress, metadata);
+                    return new ERC20TokenBalance(metadata.name(), metadata.symbol(), metadata.decimals(), ERC20AbiCodec.decodeUint256(results.get(3)));
+                });
     }
 
-    private <T extends Type> Option<T> executeERC20Call(Function function, String fromAddress, String contractAddress) {
-        final var encodedFunction = FunctionEncoder.encode(function);
+    // Packs one eth_call per call in a single JSON-RPC batch request. Raw results are returned in the same order as the given calls.
+    public List<String> executeERC20BatchCall(List<ERC20Call> calls, String fromAddress, String contractAddress) {
+        return Futures.join(executeERC20BatchCallAsync(calls, fromAddress, contractAddress));
+    }
 
-        final var response = Try.of(() -> web3j.ethCall(
-                        Transaction.createEthCallTransaction(fromAddress, contractAddress, encodedFunction), DefaultBlockParameterName.LATEST)
-                .sendAsync()
-                .get()
-        ).getOrElseThrow(e -> new RuntimeException("Couldn't make ERC-20 call", e));
+    public CompletableFuture<List<String>> executeERC20BatchCallAsync(List<ERC20Call> calls, String fromAddress, String contractAddress) {
+        final var requests = calls.stream()
+                .map(call -> web3j.ethCall(Transaction.createEthCallTransaction(fromAddress, contractAddress, call.data()), DefaultBlockParameterName.LATEST))
+                .toList();
 
-        return (Option<T>)io.vavr.collection.List.ofAll(FunctionReturnDecoder.decode(response.getValue(), function.getOutputParameters())).headOption();
+        return jsonRpcBatchService.sendAsync(requests).thenApply(responses -> IntStream.range(0, calls.size())
+                .mapToObj(i -> getCallResult(calls.get(i).name(), responses.get(i)))
+                .toList());
     }
 
-    private <T extends Type, R> R executeERC20Call(Function function, String fromAddress, String contractAddress, Class<R> returnType) {
-        final var result = executeERC20Call(function, fromAddress, contractAddress);
+    public BigInteger scaleToTokenUnitsWithoutDecimals(String contractAddress, String address, BigDecimal value) {
+        return Futures.join(scaleToTokenUnitsWithoutDecimalsAsync(contractAddress, address, value));
+    }
 
-        if (result.isEmpty()) {
-            throw new ContractCallException("Empty value returned from contract");
-        }
+    public CompletableFuture<BigInteger> scaleToTokenUnitsWithoutDecimalsAsync(String contractAddress, String address, BigDecimal value) {
+        return getTokenMetadataAsync(contractAddress, address)
+                .thenApply(metadata -> value.multiply(BigDecimal.TEN.pow(metadata.decimals().intValue())).toBigIntegerExact());
+    }
+
+    // Function name (for error messages) and its encoded call data.
+    public record ERC20Call(String name, String data) {
+    }
+
+    // Expects name, symbol and decimals results, in that order.
+    private ERC20TokenMetadata toTokenMetadata(List<String> results) {
+        return new ERC20TokenMetadata(
+                ERC20AbiCodec.decodeString(results.get(0)),
+                ERC20AbiCodec.decodeString(results.get(1)),
+                ERC20AbiCodec.decodeUint8(results.get(2))
+        );
+    }
 
-        final var value = result.get().getValue();
-        if (returnType.isAssignableFrom(result.getClass())) {
-            return (R) result;
-        } else if (returnType.isAssignableFrom(value.getClass())) {
-            return (R) value;
-        } else if (result.getClass().equals(Address.class) && returnType.equals(String.class)) {
-            return (R) result.toString();
-        } else {
-            throw new ContractCallException(
-                    "Unable to convert response: "
-                            + value
-                            + " to expected type: "
-                            + returnType.getSimpleName());
+    private String getCallResult(String functionName, EthCall response) {
+        if (response.hasError()) {
+            throw new ContractCallException("ERC-20 call " + functionName + " failed: " + response.getError().getMessage());
         }
+        return response.getValue();
     }
 
 }
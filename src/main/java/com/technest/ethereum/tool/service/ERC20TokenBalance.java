@@ -0,0 +1,13 @@
+package com.technest.ethereum.tool.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+public record ERC20TokenBalance(String name, String symbol, BigInteger decimals, BigInteger balance) {
+
+    // Balance expressed in token units, i.e. applying the token decimals to the raw balance returned by the contract.
+    public BigDecimal scaledBalance() {
+        return new BigDecimal(balance).divide(BigDecimal.TEN.pow(decimals.intValue()));
+    }
+
+}
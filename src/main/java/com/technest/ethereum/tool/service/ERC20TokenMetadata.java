@@ -0,0 +1,6 @@
+package com.technest.ethereum.tool.service;
+
+import java.math.BigInteger;
+
+public record ERC20TokenMetadata(String name, String symbol, BigInteger decimals) {
+}
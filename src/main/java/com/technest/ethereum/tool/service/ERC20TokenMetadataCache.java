@@ -0,0 +1,176 @@
+package com.technest.ethereum.tool.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technest.ethereum.tool.configuration.ERC20MetadataCacheConfigProperties;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.EthChainId;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// Token name, symbol and decimals never change for a deployed contract, so once retrieved they are kept here per chain and contract address.
+// New entries are written to the cache file in background, every writeDelay at most, so callers never wait for it, and a burst of new tokens only rewrites it
+// once. It's written on shutdown too.
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class ERC20TokenMetadataCache {
+
+    private final ERC20MetadataCacheConfigProperties properties;
+    private final EthChainId chainId;
+    private final ObjectMapper objectMapper;
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    @PostConstruct
+    void load() {
+        checkArgument(properties.getMaxSize() >= 0, "ERC-20 metadata cache max size must not be negative but was %s", properties.getMaxSize());
+        getCacheFile()
+                .filter(Files::exists)
+                .forEach(cacheFile -> {
+                    final var persistedEntries = Try.of(() -> objectMapper.readValue(cacheFile.toFile(), new TypeReference<List<PersistedEntry>>() {}))
+                            .onFailure(e -> log.warn("Couldn't load ERC-20 metadata cache from {}", cacheFile, e))
+                            .getOrElse(List.of());
+                    persistedEntries.forEach(entry -> entries.put(entry.key(), new CacheEntry(entry.metadata(), accessClock.incrementAndGet())));
+                    evictIfNeeded();
+                    log.info("Loaded {} ERC-20 token metadata entries from {}", entries.size(), cacheFile);
+                });
+    }
+
+    @PreDestroy
+    void persist() {
+        getCacheFile().forEach(this::writeTo);
+    }
+
+    @Scheduled(fixedDelayString = "${ethereum.erc20-metadata-cache.write-delay:PT5S}")
+    void persistIfChanged() {
+        if (changed.getAndSet(false)) {
+            persist();
+        }
+    }
+
+    public Option<ERC20TokenMetadata> getIfPresent(String contractAddress) {
+        final var entry = entries.get(keyFor(chainId.getChainId(), contractAddress));
+        if (entry == null) {
+            misses.increment();
+            return Option.none();
+        }
+
+        hits.increment();
+        entry.lastAccess = accessClock.incrementAndGet();
+        return Option.of(entry.metadata);
+    }
+
+    public ERC20TokenMetadata get(String contractAddress, Function<String, ERC20TokenMetadata> loader) {
+        return getIfPresent(contractAddress).getOrElse(() -> {
+            final var metadata = loader.apply(contractAddress);
+            put(contractAddress, metadata);
+            return metadata;
+        });
+    }
+
+    public void put(String contractAddress, ERC20TokenMetadata metadata) {
+        final var previous = entries.put(keyFor(chainId.getChainId(), contractAddress), new CacheEntry(metadata, accessClock.incrementAndGet()));
+        evictIfNeeded();
+
+        // New tokens are rare, so the whole cache file is rewritten when any was added.
+        if (previous == null && properties.getFile() != null) {
+            changed.set(true);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Evicts the least recently used entries. This scans the whole map, but it only happens when a new token is added and the cache is full, so reads never pay for it.
+    private void evictIfNeeded() {
+        while (entries.size() > properties.getMaxSize()) {
+            entries.entrySet().stream()
+                    .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .ifPresent(eldest -> entries.remove(eldest.getKey(), eldest.getValue()));
+        }
+    }
+
+    private synchronized void writeTo(Path cacheFile) {
+        final var persistedEntries = entries.entrySet().stream()
+                .map(entry -> PersistedEntry.of(entry.getKey(), entry.getValue().metadata))
+                .toList();
+
+        Try.run(() -> {
+            final var tmpFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            objectMapper.writeValue(tmpFile.toFile(), persistedEntries);
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }).onFailure(e -> {
+            log.warn("Couldn't persist ERC-20 metadata cache to {}", cacheFile, e);
+            changed.set(true);
+        });
+    }
+
+    private Option<Path> getCacheFile() {
+        return Option.of(properties.getFile()).map(Path::of);
+    }
+
+    private static String keyFor(BigInteger chainId, String contractAddress) {
+        return chainId + ":" + contractAddress.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class CacheEntry {
+        private final ERC20TokenMetadata metadata;
+        private volatile long lastAccess;
+
+        private CacheEntry(ERC20TokenMetadata metadata, long lastAccess) {
+            this.metadata = metadata;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private record PersistedEntry(BigInteger chainId, String contractAddress, String name, String symbol, BigInteger decimals) {
+
+        private static PersistedEntry of(String key, ERC20TokenMetadata metadata) {
+            final var separator = key.indexOf(':');
+            return new PersistedEntry(new BigInteger(key.substring(0, separator)), key.substring(separator + 1), metadata.name(), metadata.symbol(), metadata.decimals());
+        }
+
+        private String key() {
+            return keyFor(chainId, contractAddress);
+        }
+
+        private ERC20TokenMetadata metadata() {
+            return new ERC20TokenMetadata(name, symbol, decimals);
+        }
+    }
+
+}
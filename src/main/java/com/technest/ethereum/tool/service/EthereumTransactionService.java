@@ -1,23 +1,26 @@
 package com.technest.ethereum.tool.service;
 
 import com.technest.ethereum.tool.exchangerate.ExchangeRateService;
+import com.technest.ethereum.tool.journal.TransactionJournal;
+import io.vavr.Tuple;
 import io.vavr.control.Option;
-import io.vavr.control.Try;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
-import org.web3j.abi.FunctionEncoder;
-import org.web3j.abi.datatypes.Function;
+import org.web3j.crypto.Hash;
 import org.web3j.crypto.RawTransaction;
 import org.web3j.crypto.TransactionEncoder;
+import org.web3j.crypto.transaction.type.TransactionType;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.DefaultBlockParameterName;
 import org.web3j.protocol.core.methods.request.Transaction;
 import org.web3j.protocol.core.methods.response.EthChainId;
+import org.web3j.tx.ChainId;
+import org.web3j.utils.Numeric;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -28,10 +31,51 @@ public class EthereumTransactionService {
     private final EthChainId chainId;
     private final ERC20Service erc20Service;
     private final ExchangeRateService exchangeRateService;
+    private final FeeOracle feeOracle;
+    private final NonceManager nonceManager;
+    private final TransactionJournal transactionJournal;
+    private final GasEstimateCache gasEstimateCache;
+
+    public UnsignedTransaction createUnsignedTransaction(String sourceAddress, String destinationAddress, BigDecimal usdAmount, Option<String> maybeContractAddress) {
+        return Futures.join(createUnsignedTransactionAsync(sourceAddress, destinationAddress, usdAmount, maybeContractAddress));
+    }
+
+    // Amount (token decimals), fees and the sender nonce don't depend on each other, so they are retrieved at the same time, and only gas estimation waits for
+    // them. Building a transaction costs two round trips at most, and just the gas estimation one once token, fees and sender are known.
+    public CompletableFuture<UnsignedTransaction> createUnsignedTransactionAsync(String sourceAddress, String destinationAddress, BigDecimal usdAmount,
+                                                                                 Option<String> maybeContractAddress) {
+        final var amountToSend = getTransactionAmountAsync(sourceAddress, usdAmount, maybeContractAddress);
+        final var feeSnapshot = feeOracle.getSnapshotAsync();
+        // Gas is estimated before reserving the nonce, so a failed estimation doesn't leave a gap in the sender nonces.
+        final var gasLimit = amountToSend.thenCombine(nonceManager.peekNonceAsync(sourceAddress), Tuple::of)
+                .thenCompose(amountAndNonce -> estimateGasForAsync(amountAndNonce._2, destinationAddress, amountAndNonce._1, sourceAddress, maybeContractAddress));
+
+        return CompletableFuture.allOf(feeSnapshot, gasLimit)
+                .thenApply(ignored -> buildUnsignedTransaction(sourceAddress, destinationAddress, amountToSend.join(), feeSnapshot.join(), gasLimit.join(),
+                        maybeContractAddress));
+    }
+
+    public byte[] getHashToSign(RawTransaction rawTransaction) {
+        final var ethChainId = chainId.getChainId().longValue();
+        byte[] encodedTransaction;
+
+        // Legacy tx is tx before Eip1559, should have chainId as an additional parameter.
+        // After Eip1559 chainId is a part of tx.
+        boolean isLegacy =
+                ethChainId > ChainId.NONE && rawTransaction.getType().equals(TransactionType.LEGACY);
+
+        if (isLegacy) {
+            encodedTransaction = TransactionEncoder.encode(rawTransaction, ethChainId);
+        } else {
+            encodedTransaction = TransactionEncoder.encode(rawTransaction);
+        }
+
+        return Hash.sha3(encodedTransaction);
+    }
 
     public RawTransaction createTransaction(BigInteger nonce, String destinationAddress, BigInteger amountToSend, BigInteger maxPriorityFeePerGas, BigInteger maxFeePerGas,
                                             BigInteger gasLimit, String contractAddress) {
-        final var data = FunctionEncoder.encode(buildERC20TransferFunction(destinationAddress, amountToSend));
+        final var data = erc20Service.encodeTransfer(destinationAddress, amountToSend);
         return RawTransaction.createTransaction(chainId.getChainId().longValue(), nonce, gasLimit, contractAddress, BigInteger.ZERO, data, maxPriorityFeePerGas, maxFeePerGas);
     }
 
@@ -42,83 +86,100 @@ public class EthereumTransactionService {
     }
 
     public BigInteger estimateGasFor(BigInteger nonce, String destinationAddress, BigInteger amountToSend, String sourceAddress, Option<String> maybeContractAddress) {
-        return maybeContractAddress.map(contractAddress ->
-                estimateGasFor(nonce, contractAddress, BigInteger.ZERO, sourceAddress, FunctionEncoder.encode(buildERC20TransferFunction(destinationAddress, amountToSend)))
-        ).getOrElse(() -> estimateGasFor(nonce, destinationAddress, amountToSend, sourceAddress, (String)null));
+        return Futures.join(estimateGasForAsync(nonce, destinationAddress, amountToSend, sourceAddress, maybeContractAddress));
+    }
+
+    public CompletableFuture<BigInteger> estimateGasForAsync(BigInteger nonce, String destinationAddress, BigInteger amountToSend, String sourceAddress,
+                                                             Option<String> maybeContractAddress) {
+        // ERC-20 transfers to the same contract take almost the same gas, so their estimates are cached.
+        return maybeContractAddress.map(contractAddress -> {
+            final var data = erc20Service.encodeTransfer(destinationAddress, amountToSend);
+            return gasEstimateCache.getGasLimitAsync(contractAddress, data, sourceAddress, destinationAddress, amountToSend,
+                    () -> estimateGasForAsync(nonce, contractAddress, BigInteger.ZERO, sourceAddress, data));
+        }).getOrElse(() -> estimateGasForAsync(nonce, destinationAddress, amountToSend, sourceAddress, (String) null));
     }
 
     public BigInteger estimateGasFor(BigInteger nonce, String destinationAddress, BigInteger amountToSend, String sourceAddress, String data) {
-        final var result = Try
-                .of(() -> web3j.ethEstimateGas(
-                                new Transaction(
-                                        sourceAddress,
-                                        nonce,
-                                        null,
-                                        null,
-                                        destinationAddress,
-                                        amountToSend,
-                                        data,
-                                        chainId.getChainId().longValue(),
-                                        null,
-                                        null)
-                        ).send()
-                )
-                .getOrElseThrow(e -> new RuntimeException("Couldn't send transaction", e));
-
-        if (result.hasError()) {
-            throw new RuntimeException("Cannot estimate gas price for transaction: " + result.getError().getMessage());
-        }
+        return Futures.join(estimateGasForAsync(nonce, destinationAddress, amountToSend, sourceAddress, data));
+    }
+
+    public CompletableFuture<BigInteger> estimateGasForAsync(BigInteger nonce, String destinationAddress, BigInteger amountToSend, String sourceAddress, String data) {
+        return web3j.ethEstimateGas(
+                        new Transaction(
+                                sourceAddress,
+                                nonce,
+                                null,
+                                null,
+                                destinationAddress,
+                                amountToSend,
+                                data,
+                                chainId.getChainId().longValue(),
+                                null,
+                                null)
+                ).sendAsync()
+                .thenApply(result -> {
+                    if (result.hasError()) {
+                        throw new RuntimeException("Cannot estimate gas price for transaction: " + result.getError().getMessage());
+                    }
+                    return result.getAmountUsed();
+                });
+    }
 
-        return result.getAmountUsed();
+    // Fees are read from the fee oracle snapshot, which is refreshed in background once per block.
+    public FeeSnapshot getFeeSnapshot() {
+        return feeOracle.getSnapshot();
     }
 
     // Returns baseFeePerGas in weis
     public BigInteger getBaseFeePerGas() {
-        final var lastBlockBaseFeePerGas = Try
-                .of(() -> web3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).send().getBlock().getBaseFeePerGas())
-                .getOrElseThrow(e -> new RuntimeException("Cannot get base fee per gas", e));
-
-        // Sometimes, when we estimate gas for a transaction, we had an error because maxFeePerGas was smaller than last block baseFeePerGas, so adding 2% to last
-        // baseFeePerGas (which is involved in maxFeePerGas calculation) solves the problem.
-        final var twoPercent = new BigDecimal(lastBlockBaseFeePerGas).multiply(new BigDecimal("0.02")).toBigInteger();
-        return lastBlockBaseFeePerGas.add(lastBlockBaseFeePerGas.add(twoPercent));
+        return getFeeSnapshot().baseFeePerGasWithHeadroom();
     }
 
     // Returns maxPriorityFeePerGas in weis
     public BigInteger getMaxPriorityFeePerGas() {
-        return Try
-                .of(() -> web3j.ethMaxPriorityFeePerGas().send().getMaxPriorityFeePerGas())
-                .getOrElseThrow(e -> new RuntimeException("Cannot get max priority fee per gas", e));
+        return getFeeSnapshot().maxPriorityFeePerGas();
     }
 
     // Returns maxFeePerGas in weis
     public BigInteger getMaxFeePerGas() {
-        final var baseFeePerGas = getBaseFeePerGas();
-        final var maxPriorityFeePerGas = getMaxPriorityFeePerGas();
-        return baseFeePerGas.add(maxPriorityFeePerGas);
+        return getFeeSnapshot().maxFeePerGas();
     }
 
     // Returns the tx amount either in weis (if tx doesn't interact with any smart contract) or token units scaled without decimals (if interacting with a smart contract)
     public BigInteger getTransactionAmount(String sourceAddress, BigDecimal amountToSend, Option<String> maybeContractAddress) {
+        return Futures.join(getTransactionAmountAsync(sourceAddress, amountToSend, maybeContractAddress));
+    }
+
+    public CompletableFuture<BigInteger> getTransactionAmountAsync(String sourceAddress, BigDecimal amountToSend, Option<String> maybeContractAddress) {
         return maybeContractAddress
-                .map(contractAddress -> erc20Service.scaleToTokenUnitsWithoutDecimals(contractAddress, sourceAddress, amountToSend))
-                .getOrElse(exchangeRateService.fromUsdtoWeis(amountToSend));
+                .map(contractAddress -> erc20Service.scaleToTokenUnitsWithoutDecimalsAsync(contractAddress, sourceAddress, amountToSend))
+                .getOrElse(() -> CompletableFuture.completedFuture(exchangeRateService.fromUsdtoWeis(amountToSend)));
     }
 
     public BigInteger estimateFee(String sourceAddress, String destinationAddress, BigInteger amountToSend, Option<String> maybeContractAddress) {
-        final var nonce = getNonceFor(sourceAddress);
+        final var nonce = nonceManager.peekNonce(sourceAddress);
         final var maxFeePerGas = getMaxFeePerGas();
         final var gasLimit = estimateGasFor(nonce, destinationAddress, amountToSend, sourceAddress, maybeContractAddress);
         return maxFeePerGas.multiply(gasLimit);
     }
 
+    // Reserves the next nonce for the given address. Nonces are handed out locally, so it doesn't need any RPC once the address is known.
     public BigInteger getNonceFor(String address) {
-        return Try.of(() -> web3j.ethGetTransactionCount(address, DefaultBlockParameterName.LATEST).sendAsync().get().getTransactionCount())
-                .getOrElseThrow(e -> new RuntimeException("Cannot get nonce for " + address, e));
+        return nonceManager.nextNonce(address);
     }
 
-    private Function buildERC20TransferFunction(String to, BigInteger value) {
-        return erc20Service.buildTransferFunction(to, value);
+    private UnsignedTransaction buildUnsignedTransaction(String sourceAddress, String destinationAddress, BigInteger amountToSend, FeeSnapshot feeSnapshot,
+                                                         BigInteger gasLimit, Option<String> maybeContractAddress) {
+        final var nonce = getNonceFor(sourceAddress);
+        final var transaction = maybeContractAddress
+                .map(contractAddress -> createTransaction(nonce, destinationAddress, amountToSend, feeSnapshot.maxPriorityFeePerGas(), feeSnapshot.maxFeePerGas(), gasLimit, contractAddress))
+                .getOrElse(() -> createTransaction(nonce, destinationAddress, amountToSend, feeSnapshot.maxPriorityFeePerGas(), feeSnapshot.maxFeePerGas(), gasLimit));
+
+        final var encodedTransaction = TransactionEncoder.encode(transaction);
+        final var hashToSign = getHashToSign(transaction);
+        transactionJournal.recordBuilt(sourceAddress, nonce, hashToSign, encodedTransaction);
+
+        return new UnsignedTransaction(sourceAddress, transaction, HexFormat.of().formatHex(encodedTransaction), Numeric.toHexStringNoPrefix(hashToSign));
     }
 
 }
@@ -0,0 +1,164 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.configuration.FeeOracleConfigProperties;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthMaxPriorityFeePerGas;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+// Keeps an up-to-date snapshot of network fees, refreshed in background once per new block, so building a transaction doesn't need any RPC to get its fees.
+// A snapshot not confirmed to be current for longer than maxAge (e.g. the node couldn't be reached for a while) isn't handed out any more: fees are refreshed
+// synchronously instead, failing if the node still can't be reached. Async refreshes are made of async RPC stages, so they don't block any thread.
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class FeeOracle {
+
+    private final Web3j web3j;
+    private final FeeOracleConfigProperties properties;
+    private final AtomicReference<FeeSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<FeeSnapshot>> pendingRefresh = new AtomicReference<>();
+    // When the snapshot was last confirmed to be the one of the latest block, in System.nanoTime terms.
+    private final AtomicLong checkedAt = new AtomicLong();
+
+    public FeeSnapshot getSnapshot() {
+        final var currentSnapshot = getFreshSnapshot();
+        return currentSnapshot != null ? currentSnapshot : refresh();
+    }
+
+    // Same as getSnapshot, without blocking if fees haven't been retrieved yet or are too old. Concurrent calls share the same refresh.
+    public CompletableFuture<FeeSnapshot> getSnapshotAsync() {
+        final var currentSnapshot = getFreshSnapshot();
+        if (currentSnapshot != null) {
+            return CompletableFuture.completedFuture(currentSnapshot);
+        }
+
+        final var future = new CompletableFuture<FeeSnapshot>();
+        if (!pendingRefresh.compareAndSet(null, future)) {
+            // The refresh in flight may have just finished, in which case the snapshot is there already.
+            final var inFlight = pendingRefresh.get();
+            return inFlight != null ? inFlight : getSnapshotAsync();
+        }
+        refreshAsync().whenComplete((refreshedSnapshot, e) -> {
+            pendingRefresh.set(null);
+            if (e == null) {
+                future.complete(refreshedSnapshot);
+            } else {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Scheduled(fixedDelayString = "${ethereum.fee-oracle.poll-interval:PT2S}")
+    public void refreshInBackground() {
+        Try.run(this::refresh).onFailure(e -> log.warn("Couldn't refresh fees, keeping the ones from block {}", currentBlockNumber(), e));
+    }
+
+    // Only eth_blockNumber is called while there's no new block. Fee history is retrieved once per block.
+    public FeeSnapshot refresh() {
+        try {
+            return refreshAsync().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    // Same as refresh, made of async RPC stages, so no thread is blocked while waiting for the node.
+    public CompletableFuture<FeeSnapshot> refreshAsync() {
+        final var startTime = System.nanoTime();
+        return orFailWith(web3j.ethBlockNumber().sendAsync().thenApply(EthBlockNumber::getBlockNumber), "Cannot get latest block number").thenCompose(latestBlockNumber -> {
+            final var currentSnapshot = snapshot.get();
+            if (currentSnapshot != null && currentSnapshot.blockNumber().compareTo(latestBlockNumber) >= 0) {
+                checkedAt.accumulateAndGet(startTime, Math::max);
+                return CompletableFuture.completedFuture(currentSnapshot);
+            }
+
+            return retrieveFeesAtAsync(latestBlockNumber).thenApply(newSnapshot -> {
+                snapshot.accumulateAndGet(newSnapshot, (previous, next) -> previous != null && previous.blockNumber().compareTo(next.blockNumber()) > 0 ? previous : next);
+                checkedAt.accumulateAndGet(startTime, Math::max);
+                log.debug("Fees refreshed at block {}: baseFeePerGas={} maxPriorityFeePerGas={}", latestBlockNumber, newSnapshot.baseFeePerGas(), newSnapshot.maxPriorityFeePerGas());
+                return newSnapshot;
+            });
+        });
+    }
+
+    private CompletableFuture<FeeSnapshot> retrieveFeesAtAsync(BigInteger blockNumber) {
+        final var feeHistoryRequest = web3j.ethFeeHistory(properties.getHistoryBlocks(), DefaultBlockParameter.valueOf(blockNumber), properties.getRewardPercentiles());
+        return orFailWith(feeHistoryRequest.sendAsync().thenApply(response -> {
+            if (response.hasError()) {
+                throw new RuntimeException(response.getError().getMessage());
+            }
+            return response.getFeeHistory();
+        }), "Cannot get fee history").thenCompose(feeHistory -> {
+            // Last element of baseFeePerGas is the base fee of the block following the newest one in the history.
+            final var baseFeesPerGas = feeHistory.getBaseFeePerGas();
+            final var nextBlockBaseFeePerGas = baseFeesPerGas.get(baseFeesPerGas.size() - 1);
+
+            final var priorityFeePercentiles = new LinkedHashMap<Double, BigInteger>();
+            final var rewards = Objects.requireNonNullElse(feeHistory.getReward(), List.<List<BigInteger>>of());
+            IntStream.range(0, properties.getRewardPercentiles().size()).forEach(i ->
+                    medianOf(rewards.stream().filter(blockRewards -> blockRewards.size() > i).map(blockRewards -> blockRewards.get(i)).toList())
+                            .forEach(median -> priorityFeePercentiles.put(properties.getRewardPercentiles().get(i), median))
+            );
+
+            return Option.of(priorityFeePercentiles.get(properties.getPriorityFeePercentile()))
+                    .map(CompletableFuture::completedFuture)
+                    .getOrElse(this::retrieveMaxPriorityFeePerGasAsync)
+                    .thenApply(maxPriorityFeePerGas -> new FeeSnapshot(blockNumber, nextBlockBaseFeePerGas, Collections.unmodifiableMap(priorityFeePercentiles),
+                            maxPriorityFeePerGas, Instant.now()));
+        });
+    }
+
+    // Used when fee history doesn't include rewards for the configured percentile.
+    private CompletableFuture<BigInteger> retrieveMaxPriorityFeePerGasAsync() {
+        return orFailWith(web3j.ethMaxPriorityFeePerGas().sendAsync().thenApply(EthMaxPriorityFeePerGas::getMaxPriorityFeePerGas),
+                "Cannot get max priority fee per gas");
+    }
+
+    private FeeSnapshot getFreshSnapshot() {
+        final var currentSnapshot = snapshot.get();
+        return currentSnapshot != null && System.nanoTime() - checkedAt.get() <= properties.getMaxAge().toNanos() ? currentSnapshot : null;
+    }
+
+    private BigInteger currentBlockNumber() {
+        final var currentSnapshot = snapshot.get();
+        return currentSnapshot != null ? currentSnapshot.blockNumber() : null;
+    }
+
+    // Fails with the given message, caused by whatever made the stage fail.
+    private static <T> CompletableFuture<T> orFailWith(CompletableFuture<T> stage, String message) {
+        return stage.handle((value, e) -> {
+            if (e != null) {
+                throw new RuntimeException(message, e instanceof CompletionException ? e.getCause() : e);
+            }
+            return value;
+        });
+    }
+
+    private static Option<BigInteger> medianOf(List<BigInteger> values) {
+        return values.isEmpty() ?
+                Option.none() :
+                Option.of(values.stream().sorted(Comparator.naturalOrder()).toList().get(values.size() / 2));
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.technest.ethereum.tool.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Map;
+
+// All fees are in weis. baseFeePerGas is the base fee of the block following blockNumber.
+public record FeeSnapshot(BigInteger blockNumber, BigInteger baseFeePerGas, Map<Double, BigInteger> priorityFeePercentiles, BigInteger maxPriorityFeePerGas,
+                          Instant refreshedAt) {
+
+    public BigInteger baseFeePerGasWithHeadroom() {
+        // Sometimes, when we estimate gas for a transaction, we had an error because maxFeePerGas was smaller than last block baseFeePerGas, so adding 2% to last
+        // baseFeePerGas (which is involved in maxFeePerGas calculation) solves the problem.
+        final var twoPercent = new BigDecimal(baseFeePerGas).multiply(new BigDecimal("0.02")).toBigInteger();
+        return baseFeePerGas.add(baseFeePerGas.add(twoPercent));
+    }
+
+    public BigInteger maxFeePerGas() {
+        return baseFeePerGasWithHeadroom().add(maxPriorityFeePerGas);
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.technest.ethereum.tool.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+final class Futures {
+
+    private Futures() {
+    }
+
+    // Waits for the future, throwing what it failed with instead of a CompletionException wrapping it, so blocking methods built on top of async ones keep
+    // failing the same way they used to.
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+}
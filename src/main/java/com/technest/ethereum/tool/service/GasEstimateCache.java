@@ -0,0 +1,99 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.configuration.GasEstimateCacheConfigProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vavr.Tuple;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Caches gas estimates of ERC-20 calls by contract, call selector and whether the recipient already holds a balance of the token, which is what gas used
+// mostly depends on for a standard transfer (setting a zero balance slot costs 20000 gas, updating a non-zero one 5000).
+// An estimate is sampled with eth_estimateGas on a cache miss, and reused, with a safety margin on top, until it's older than ttl. Concurrent misses on the same
+// key share the same sample, so a bulk build only estimates once per key. The recipient class costs a balanceOf eth_call, much cheaper than eth_estimateGas.
+// Cached estimates don't simulate the transaction, so the sender balance is read along with the recipient one, and a transfer of more than it fails right
+// away, as eth_estimateGas would, instead of reverting once it's broadcast.
+@Log4j2
+@Component
+public class GasEstimateCache {
+
+    private final ERC20Service erc20Service;
+    private final GasEstimateCacheConfigProperties properties;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    // sampledAt is in System.nanoTime terms.
+    private record Entry(long sampledAt, CompletableFuture<BigInteger> estimate) {
+    }
+
+    public GasEstimateCache(ERC20Service erc20Service, GasEstimateCacheConfigProperties properties, MeterRegistry meterRegistry) {
+        this.erc20Service = erc20Service;
+        this.properties = properties;
+        this.hits = meterRegistry.counter("gas.estimate.cache", "result", "hit");
+        this.misses = meterRegistry.counter("gas.estimate.cache", "result", "miss");
+    }
+
+    // Returns the gas limit for transferring amount tokens of contractAddress from sender to recipient, with the given call data. The estimator does the actual
+    // eth_estimateGas.
+    public CompletableFuture<BigInteger> getGasLimitAsync(String contractAddress, String data, String sender, String recipient, BigInteger amount,
+                                                          Supplier<CompletableFuture<BigInteger>> estimator) {
+        if (!properties.isEnabled()) {
+            return estimator.get();
+        }
+
+        return erc20Service.getBalanceOfAsync(contractAddress, sender)
+                .thenCombine(erc20Service.getBalanceOfAsync(contractAddress, recipient), Tuple::of)
+                .thenCompose(balances -> {
+                    if (balances._1.compareTo(amount) < 0) {
+                        return CompletableFuture.failedFuture(new RuntimeException(
+                                "Cannot estimate gas price for transaction: transfer amount " + amount + " exceeds sender balance " + balances._1));
+                    }
+                    return getOrSample(keyFor(contractAddress, data, balances._2.signum() > 0), estimator);
+                })
+                .thenApply(this::withSafetyMargin);
+    }
+
+    private CompletableFuture<BigInteger> getOrSample(String key, Supplier<CompletableFuture<BigInteger>> estimator) {
+        final var now = System.nanoTime();
+        final var entry = entries.compute(key, (ignored, cached) -> {
+            if (cached != null && !isExpired(cached, now) && !cached.estimate().isCompletedExceptionally()) {
+                hits.increment();
+                return cached;
+            }
+            misses.increment();
+            return new Entry(now, estimator.get());
+        });
+
+        // A failed sample isn't cached, the next call for the key samples again.
+        return entry.estimate().whenComplete((estimate, e) -> {
+            if (e != null) {
+                entries.remove(key, entry);
+            } else if (log.isDebugEnabled() && entry.sampledAt() == now) {
+                log.debug("Sampled gas estimate {} for {}", estimate, key);
+            }
+        });
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.sampledAt() >= properties.getTtl().toNanos();
+    }
+
+    private BigInteger withSafetyMargin(BigInteger estimate) {
+        return estimate.multiply(BigInteger.valueOf(100L + properties.getSafetyMarginPercent())).divide(BigInteger.valueOf(100));
+    }
+
+    // Call selector is the first 4 bytes of the call data.
+    private static String keyFor(String contractAddress, String data, boolean recipientHasBalance) {
+        final var selector = data.substring(0, Math.min(data.length(), data.startsWith("0x") ? 10 : 8));
+        return contractAddress.toLowerCase(Locale.ROOT) + ":" + selector.toLowerCase(Locale.ROOT) + ":" + (recipientHasBalance ? "holder" : "new");
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.technest.ethereum.tool.service;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class JsonRpcBatchService {
+
+    private final Web3j web3j;
+
+    public <T extends Response<?>> List<T> send(List<? extends Request<?, T>> requests) {
+        return Try.of(() -> sendAsync(requests).get())
+                .getOrElseThrow(e -> new RuntimeException("Couldn't send JSON-RPC batch request", e));
+    }
+
+    // Packs all the requests in a single JSON-RPC batch, returning the responses in the same order the requests were given.
+    public <T extends Response<?>> CompletableFuture<List<T>> sendAsync(List<? extends Request<?, T>> requests) {
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        final var batch = web3j.newBatch();
+        requests.forEach(batch::add);
+
+        return batch.sendAsync().thenApply(batchResponse -> {
+            // JSON-RPC servers may answer a batch in any order, so responses are matched with their requests by id instead of by position. They're
+            // deserialized as the response type of their request already, so casting to it never fails.
+            final var responsesById = batchResponse.getResponses().stream()
+                    .collect(Collectors.toMap(Response::getId, Function.identity(), (first, second) -> first));
+
+            return requests.stream()
+                    .map(request -> request.getResponseType().cast(Option.of(responsesById.get(request.getId()))
+                            .getOrElseThrow(() -> new RuntimeException("Missing response for JSON-RPC request " + request.getMethod() + " with id " + request.getId()))))
+                    .toList();
+        });
+    }
+
+}
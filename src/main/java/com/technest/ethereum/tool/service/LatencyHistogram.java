@@ -0,0 +1,41 @@
+package com.technest.ethereum.tool.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Millisecond resolution latency histogram with a fixed footprint, no matter how many latencies are recorded. Latencies over the maximum are counted in the
+// last bucket. Thread safe.
+public class LatencyHistogram {
+
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram(Duration maxLatency) {
+        this.counts = new AtomicLongArray((int) maxLatency.toMillis() + 1);
+    }
+
+    public void record(Duration latency) {
+        counts.incrementAndGet((int) Math.min(Math.max(0, latency.toMillis()), counts.length() - 1));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    // Percentile between 0 and 1, e.g. 0.99 for p99.
+    public Duration getPercentile(double percentile) {
+        final var rank = (long) Math.ceil(percentile * getCount());
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+            if (count >= rank && count > 0) {
+                return Duration.ofMillis(i);
+            }
+        }
+        return Duration.ZERO;
+    }
+
+}
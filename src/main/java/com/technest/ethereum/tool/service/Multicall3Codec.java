@@ -0,0 +1,111 @@
+package com.technest.ethereum.tool.service;
+
+import io.vavr.control.Option;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// ABI encoding of Multicall3 aggregate3 calls made of single address argument functions (balanceOf, getEthBalance), and decoding of their uint256 results.
+// Every call has the same shape, so the whole request is written straight into a byte array and results are read at their offsets, instead of going through
+// web3j's reflection based type encoders and decoders once per call.
+final class Multicall3Codec {
+
+    // aggregate3((address,bool,bytes)[])
+    private static final byte[] AGGREGATE3_SELECTOR = Numeric.hexStringToByteArray("82ad56cb");
+    // getEthBalance(address), a Multicall3 function
+    static final byte[] GET_ETH_BALANCE_SELECTOR = Numeric.hexStringToByteArray("4d2301cc");
+    // balanceOf(address)
+    static final byte[] BALANCE_OF_SELECTOR = ERC20AbiCodec.BALANCE_OF_SELECTOR;
+
+    private static final int WORD = 32;
+    private static final int CALL_DATA_LENGTH = 4 + WORD;
+    // target, allowFailure, callData offset, callData length and callData padded to 2 words.
+    private static final int ENCODED_CALL_LENGTH = 4 * WORD + 2 * WORD;
+
+    record Call(String target, byte[] selector, String address) {
+    }
+
+    private Multicall3Codec() {
+    }
+
+    // Every call is made with allowFailure = true, so a failing call (e.g. a contract which isn't an ERC-20 token) doesn't make the whole aggregate fail.
+    static String encodeAggregate3(List<Call> calls) {
+        final var count = calls.size();
+        final var data = new byte[4 + 2 * WORD + count * WORD + count * ENCODED_CALL_LENGTH];
+        System.arraycopy(AGGREGATE3_SELECTOR, 0, data, 0, 4);
+
+        var position = 4;
+        position = writeUint(data, position, WORD);
+        position = writeUint(data, position, count);
+        for (int i = 0; i < count; i++) {
+            position = writeUint(data, position, (long) count * WORD + (long) i * ENCODED_CALL_LENGTH);
+        }
+
+        for (final var call : calls) {
+            position = writeAddress(data, position, call.target());
+            position = writeUint(data, position, 1);
+            position = writeUint(data, position, 3 * WORD);
+            position = writeUint(data, position, CALL_DATA_LENGTH);
+            System.arraycopy(call.selector(), 0, data, position, 4);
+            writeAddress(data, position + 4, call.address());
+            position += 2 * WORD;
+        }
+
+        return Numeric.toHexString(data);
+    }
+
+    // Decodes (bool success, bytes returnData)[] as uint256 values. Calls which failed, or didn't return a single word, are empty.
+    static List<Option<BigInteger>> decodeAggregate3Uints(String response, int expectedCount) {
+        final var data = Numeric.hexStringToByteArray(response);
+        checkArgument(data.length >= 2 * WORD, "Empty aggregate3 response. Is Multicall3 deployed in this network?");
+
+        final var arrayStart = readInt(data, 0);
+        final var count = readInt(data, arrayStart);
+        checkArgument(count == expectedCount, "Expected " + expectedCount + " aggregate3 results but got " + count);
+
+        final var results = new ArrayList<Option<BigInteger>>(count);
+        final var offsetsStart = arrayStart + WORD;
+        for (int i = 0; i < count; i++) {
+            final var resultStart = offsetsStart + readInt(data, offsetsStart + i * WORD);
+            final var success = readInt(data, resultStart) != 0;
+            final var returnDataStart = resultStart + readInt(data, resultStart + WORD);
+            final var returnDataLength = readInt(data, returnDataStart);
+            checkArgument((long) returnDataStart + WORD + returnDataLength <= data.length, "Malformed aggregate3 response");
+
+            results.add(success && returnDataLength == WORD
+                    ? Option.of(new BigInteger(1, data, returnDataStart + WORD, WORD))
+                    : Option.none());
+        }
+        return results;
+    }
+
+    private static int writeUint(byte[] data, int position, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            data[position + WORD - 1 - i] = (byte) (value >>> (8 * i));
+        }
+        return position + WORD;
+    }
+
+    private static int writeAddress(byte[] data, int position, String address) {
+        final var bytes = Numeric.hexStringToByteArray(address);
+        checkArgument(bytes.length == 20, "Invalid address: " + address);
+        System.arraycopy(bytes, 0, data, position + WORD - 20, 20);
+        return position + WORD;
+    }
+
+    // Offsets and lengths always fit in an int, anything bigger means the response is malformed.
+    private static int readInt(byte[] data, int position) {
+        checkArgument(position >= 0 && (long) position + WORD <= data.length, "Malformed aggregate3 response");
+        for (int i = 0; i < WORD - Integer.BYTES; i++) {
+            checkArgument(data[position + i] == 0, "Malformed aggregate3 response");
+        }
+        final var value = (data[position + 28] & 0xff) << 24 | (data[position + 29] & 0xff) << 16 | (data[position + 30] & 0xff) << 8 | (data[position + 31] & 0xff);
+        checkArgument(value >= 0, "Malformed aggregate3 response");
+        return value;
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.journal.TransactionJournal;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+
+import java.math.BigInteger;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands out nonces locally, so transactions built back to back for the same sender never collide. Each sender is synced once, from the highest of the
+// node's pending transaction count and the nonce following the last one the transaction journal saw broadcast (in case the node hasn't seen it yet), and
+// from then on nonces come from an atomic per-address counter.
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class NonceManager {
+
+    private static final String NONCE_TOO_LOW_ERROR = "nonce too low";
+
+    private final Web3j web3j;
+    private final TransactionJournal transactionJournal;
+    private final Map<String, AtomicLong> nextNonces = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<BigInteger>> syncsInFlight = new ConcurrentHashMap<>();
+
+    public BigInteger nextNonce(String address) {
+        return BigInteger.valueOf(counterFor(address).getAndIncrement());
+    }
+
+    // Returns the nonce the next transaction would get, without reserving it.
+    public BigInteger peekNonce(String address) {
+        return BigInteger.valueOf(counterFor(address).get());
+    }
+
+    // Same as peekNonce, without blocking while a sender not known yet is synced from the node. Concurrent calls for the same sender share a single request.
+    public CompletableFuture<BigInteger> peekNonceAsync(String address) {
+        final var key = address.toLowerCase(Locale.ROOT);
+        final var counter = nextNonces.get(key);
+        if (counter != null) {
+            return CompletableFuture.completedFuture(peekNonce(key));
+        }
+
+        final var future = new CompletableFuture<BigInteger>();
+        final var inFlight = syncsInFlight.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        web3j.ethGetTransactionCount(key, DefaultBlockParameterName.PENDING).sendAsync()
+                .thenApply(response -> {
+                    if (response.hasError()) {
+                        throw new RuntimeException("Cannot get nonce for " + key + ": " + response.getError().getMessage());
+                    }
+                    return BigInteger.valueOf(nextNonces.computeIfAbsent(key, ignored -> new AtomicLong(initialNonce(key, response.getTransactionCount()))).get());
+                })
+                .whenComplete((nonce, e) -> {
+                    syncsInFlight.remove(key, future);
+                    if (e == null) {
+                        future.complete(nonce);
+                    } else {
+                        future.completeExceptionally(e);
+                    }
+                });
+        return future;
+    }
+
+    // Number of nonces handed out locally which the node doesn't know about yet. They are either pending to be signed and broadcast, or have been discarded,
+    // in which case following transactions will be stuck until the gap is filled or the sender is reset.
+    public long getGap(String address) {
+        return counterFor(address).get() - fetchPendingNonce(address).longValueExact();
+    }
+
+    // Moves the local counter forward if the node is ahead of it (i.e. transactions were sent from somewhere else), keeping nonces handed out locally.
+    public BigInteger resync(String address) {
+        final var pendingNonce = fetchPendingNonce(address).longValueExact();
+        final var nextNonce = counterFor(address).accumulateAndGet(pendingNonce, Math::max);
+        log.info("Nonce for {} resynced: pending={} next={}", address, pendingNonce, nextNonce);
+        return BigInteger.valueOf(nextNonce);
+    }
+
+    // Discards every nonce handed out locally which the node doesn't know about, filling any gap.
+    public BigInteger reset(String address) {
+        final var pendingNonce = fetchPendingNonce(address).longValueExact();
+        counterFor(address).set(pendingNonce);
+        log.info("Nonce for {} reset to {}", address, pendingNonce);
+        return BigInteger.valueOf(pendingNonce);
+    }
+
+    public void onBroadcastFailed(String address, BigInteger nonce, String errorMessage) {
+        if (errorMessage != null && errorMessage.toLowerCase(Locale.ROOT).contains(NONCE_TOO_LOW_ERROR)) {
+            log.warn("Tx with nonce {} from {} was rejected because its nonce is too low", nonce, address);
+            resync(address);
+        }
+    }
+
+    // A sender not known yet is synced outside the map, so no bin of it stays locked for a whole round trip to the node. Concurrent syncs of the same
+    // sender share a single request, and only the cheap merge with the journal runs inside computeIfAbsent.
+    private AtomicLong counterFor(String address) {
+        final var key = address.toLowerCase(Locale.ROOT);
+        final var counter = nextNonces.get(key);
+        if (counter != null) {
+            return counter;
+        }
+
+        try {
+            peekNonceAsync(key).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Cannot get nonce for " + key, e.getCause());
+        }
+        return nextNonces.get(key);
+    }
+
+    // Transactions sent from somewhere else move the node's pending count ahead of the journal, while the journal is ahead of a node which dropped (or
+    // hasn't got yet) a transaction broadcast in a previous run.
+    private long initialNonce(String address, BigInteger pendingNonce) {
+        return transactionJournal.getNextNonce(address).filter(journalNonce -> journalNonce.compareTo(pendingNonce) > 0).getOrElse(pendingNonce).longValueExact();
+    }
+
+    private BigInteger fetchPendingNonce(String address) {
+        return Try.of(() -> web3j.ethGetTransactionCount(address, DefaultBlockParameterName.PENDING).send())
+                .filter(response -> !response.hasError(), response -> new RuntimeException(response.getError().getMessage()))
+                .map(EthGetTransactionCount::getTransactionCount)
+                .getOrElseThrow(e -> new RuntimeException("Cannot get nonce for " + address, e));
+    }
+
+}
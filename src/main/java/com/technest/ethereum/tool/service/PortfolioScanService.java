@@ -0,0 +1,139 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.configuration.MulticallConfigProperties;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.web3j.crypto.WalletUtils;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkState;
+
+// Retrieves ETH and ERC-20 balances of many addresses packing them into Multicall3 aggregate3 calls, all of them at the same block, so balances are
+// consistent among them. Results are handed to the caller a chunk at a time, as soon as they are retrieved.
+// Providers limit eth_call gas and response sizes, so the chunk size is adapted on the go: it's halved (and the chunk retried) whenever an aggregate call
+// fails, and grows slowly back after every successful one, up to the smallest size that failed. The size learnt is kept for following scans.
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class PortfolioScanService {
+
+    private final Web3j web3j;
+    private final MulticallConfigProperties properties;
+    private final AtomicInteger chunkSize = new AtomicInteger();
+
+    // Native ETH balance when there's no token contract.
+    public record BalanceQuery(String address, Option<String> tokenContract) {
+    }
+
+    // Balance is empty when it couldn't be retrieved, e.g. the token contract isn't an ERC-20 token.
+    public record BalanceResult(BalanceQuery query, Option<BigInteger> balance) {
+    }
+
+    public record ScanResult(BigInteger blockNumber, long balances, long failed, long aggregateCalls, int chunkSize, Duration elapsed) {
+    }
+
+    public ScanResult scan(Stream<BalanceQuery> queries, Consumer<List<BalanceResult>> resultConsumer) {
+        final var startTime = System.nanoTime();
+        final var multicallCode = Try.of(() -> web3j.ethGetCode(properties.getAddress(), DefaultBlockParameterName.LATEST).send().getCode())
+                .getOrElseThrow(e -> new RuntimeException("Cannot check Multicall3 contract", e));
+        checkState(multicallCode != null && !Numeric.cleanHexPrefix(multicallCode).isEmpty(), "Multicall3 isn't deployed at " + properties.getAddress() + " in this network");
+
+        final var blockNumber = Try.of(() -> web3j.ethBlockNumber().send().getBlockNumber())
+                .getOrElseThrow(e -> new RuntimeException("Cannot get latest block number", e));
+        final var block = DefaultBlockParameter.valueOf(blockNumber);
+
+        long balances = 0;
+        long failed = 0;
+        long aggregateCalls = 0;
+        // Chunk sizes which already failed in this scan aren't tried again.
+        var smallestFailedChunkSize = Integer.MAX_VALUE;
+        final var iterator = queries.iterator();
+        final var pending = new ArrayDeque<BalanceQuery>();
+        while (iterator.hasNext() || !pending.isEmpty()) {
+            final var currentChunkSize = getChunkSize();
+            while (pending.size() < currentChunkSize && iterator.hasNext()) {
+                final var query = iterator.next();
+                if (isValid(query)) {
+                    pending.add(query);
+                } else {
+                    balances++;
+                    failed++;
+                    resultConsumer.accept(List.of(new BalanceResult(query, Option.none())));
+                }
+            }
+            if (pending.isEmpty()) {
+                continue;
+            }
+
+            final var chunk = new ArrayList<BalanceQuery>(currentChunkSize);
+            while (chunk.size() < currentChunkSize && !pending.isEmpty()) {
+                chunk.add(pending.poll());
+            }
+
+            aggregateCalls++;
+            final var response = aggregate(chunk, block);
+            if (response.isSuccess()) {
+                final var results = IntStream.range(0, chunk.size()).mapToObj(i -> new BalanceResult(chunk.get(i), response.get().get(i))).toList();
+                balances += results.size();
+                failed += results.stream().filter(result -> result.balance().isEmpty()).count();
+                resultConsumer.accept(results);
+                final var grownChunkSize = Math.min(Math.min(properties.getMaxChunkSize(), smallestFailedChunkSize - 1), currentChunkSize + Math.max(1, currentChunkSize / 4));
+                chunkSize.compareAndSet(currentChunkSize, Math.max(currentChunkSize, grownChunkSize));
+            } else if (chunk.size() > 1) {
+                log.info("Aggregate call of {} balances failed, retrying with smaller chunks: {}", chunk.size(), response.getCause().getMessage());
+                smallestFailedChunkSize = Math.min(smallestFailedChunkSize, chunk.size());
+                chunkSize.compareAndSet(currentChunkSize, Math.max(1, chunk.size() / 2));
+                for (int i = chunk.size() - 1; i >= 0; i--) {
+                    pending.addFirst(chunk.get(i));
+                }
+            } else {
+                log.warn("Couldn't retrieve balance of {}: {}", chunk.get(0), response.getCause().getMessage());
+                balances++;
+                failed++;
+                resultConsumer.accept(List.of(new BalanceResult(chunk.get(0), Option.none())));
+            }
+        }
+
+        return new ScanResult(blockNumber, balances, failed, aggregateCalls, getChunkSize(), Duration.ofNanos(System.nanoTime() - startTime));
+    }
+
+    public int getChunkSize() {
+        return chunkSize.updateAndGet(size -> size > 0 ? size : properties.getInitialChunkSize());
+    }
+
+    // Malformed addresses would make the whole aggregate call fail, so they are discarded beforehand.
+    private static boolean isValid(BalanceQuery query) {
+        return WalletUtils.isValidAddress(query.address()) && query.tokenContract().forAll(WalletUtils::isValidAddress);
+    }
+
+    private Try<List<Option<BigInteger>>> aggregate(List<BalanceQuery> chunk, DefaultBlockParameter block) {
+        final var calls = chunk.stream()
+                .map(query -> query.tokenContract()
+                        .map(contract -> new Multicall3Codec.Call(contract, Multicall3Codec.BALANCE_OF_SELECTOR, query.address()))
+                        .getOrElse(() -> new Multicall3Codec.Call(properties.getAddress(), Multicall3Codec.GET_ETH_BALANCE_SELECTOR, query.address())))
+                .toList();
+
+        return Try.of(() -> web3j.ethCall(Transaction.createEthCallTransaction(null, properties.getAddress(), Multicall3Codec.encodeAggregate3(calls)), block).send())
+                .flatMap(response -> response.hasError()
+                        ? Try.failure(new RuntimeException(response.getError().getMessage()))
+                        : Try.of(() -> Multicall3Codec.decodeAggregate3Uints(response.getValue(), calls.size())));
+    }
+
+}
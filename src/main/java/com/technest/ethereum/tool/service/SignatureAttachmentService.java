@@ -0,0 +1,84 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.journal.TransactionJournal;
+import lombok.RequiredArgsConstructor;
+import org.bitcoinj.core.ECKey;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECPoint;
+import org.springframework.stereotype.Service;
+import org.web3j.crypto.Keys;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.Sign;
+import org.web3j.crypto.transaction.type.TransactionType;
+import org.web3j.protocol.core.methods.response.EthChainId;
+import org.web3j.tx.ChainId;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static org.web3j.crypto.TransactionEncoder.createEip155SignatureData;
+import static org.web3j.crypto.TransactionEncoder.encode;
+
+// Attaches externally made signatures (HSM, MPC...) to unsigned transactions.
+// Instead of recovering the public key for every possible recovery id until one matches the signer, the signature is verified against the signer's public key,
+// computing R = (e * s^-1) * G + (r * s^-1) * Q. That single point gives both the verification (R.x mod n == r) and the recovery id (R.y parity, and whether
+// R.x overflowed the curve order).
+@Service
+@RequiredArgsConstructor
+public class SignatureAttachmentService {
+
+    private final EthereumTransactionService ethereumTransactionService;
+    private final EthChainId chainId;
+    private final TransactionJournal transactionJournal;
+
+    // Returns the signed transaction, RLP encoded. The signature is r and s, concatenated.
+    public byte[] attachSignature(ECPoint publicKey, RawTransaction rawTransaction, byte[] signature, byte[] messageHash) {
+        checkArgument(Arrays.equals(messageHash, ethereumTransactionService.getHashToSign(rawTransaction)), "Message hash doesn't match the transaction");
+
+        final var signatureData = toSignatureData(publicKey, signature, messageHash);
+        final var ethChainId = chainId.getChainId().longValue();
+
+        // Legacy tx is tx before Eip1559, should have chainId in v.
+        final var isLegacy = ethChainId > ChainId.NONE && rawTransaction.getType().equals(TransactionType.LEGACY);
+        final var signedTransaction = encode(rawTransaction, isLegacy ? createEip155SignatureData(signatureData, ethChainId) : signatureData);
+
+        if (transactionJournal.isEnabled()) {
+            final var uncompressedPublicKey = publicKey.getEncoded(false);
+            final var sender = Numeric.toHexString(Keys.getAddress(Arrays.copyOfRange(uncompressedPublicKey, 1, uncompressedPublicKey.length)));
+            transactionJournal.recordSigned(sender, rawTransaction.getNonce(), signedTransaction);
+        }
+        return signedTransaction;
+    }
+
+    private static Sign.SignatureData toSignatureData(ECPoint publicKey, byte[] signature, byte[] messageHash) {
+        final var n = ECKey.CURVE.getN();
+        final var half = signature.length / 2;
+        final var r = new BigInteger(1, signature, 0, half);
+        var s = new BigInteger(1, signature, half, half);
+        checkArgument(r.signum() > 0 && r.compareTo(n) < 0 && s.signum() > 0 && s.compareTo(n) < 0, "Invalid signature");
+
+        // It has to be in canonical form because of:
+        //   https://github.com/ethereum/EIPs/blob/master/EIPS/eip-2.md
+        //   All transaction signatures whose s-value is greater than secp256k1n/2 are now considered invalid. The ECDSA recover precompiled contract remains unchanged
+        //   and will keep accepting high s-values; this is useful e.g. if a contract recovers old Bitcoin signatures.
+        if (s.compareTo(ECKey.HALF_CURVE_ORDER) > 0) {
+            s = n.subtract(s);
+        }
+
+        final var w = s.modInverse(n);
+        final var u1 = new BigInteger(1, messageHash).multiply(w).mod(n);
+        final var u2 = r.multiply(w).mod(n);
+        final var point = ECAlgorithms.sumOfTwoMultiplies(ECKey.CURVE.getG(), u1, publicKey, u2).normalize();
+        checkState(!point.isInfinity(), "Something wrong happened while doing the signature");
+
+        final var x = point.getAffineXCoord().toBigInteger();
+        checkState(x.mod(n).equals(r), "Signature wasn't made with the given public key for this message hash");
+
+        final var recId = (point.getAffineYCoord().testBitZero() ? 1 : 0) + (x.compareTo(n) >= 0 ? 2 : 0);
+        return new Sign.SignatureData((byte) (27 + recId), Numeric.toBytesPadded(r, 32), Numeric.toBytesPadded(s, 32));
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.technest.ethereum.tool.service;
+
+import com.technest.ethereum.tool.configuration.ConfirmationTrackerConfigProperties;
+import io.vavr.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+// Waits for transaction receipts on behalf of any number of callers. All pending transactions are checked together, with a single batched receipt request
+// per new block, and each caller gets a future completed once its transaction has enough confirmations.
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class TransactionConfirmationTracker {
+
+    private final Web3j web3j;
+    private final JsonRpcBatchService jsonRpcBatchService;
+    private final ConfirmationTrackerConfigProperties properties;
+    private final Map<String, PendingTransaction> pendingTransactions = new ConcurrentHashMap<>();
+
+    public CompletableFuture<TransactionReceipt> track(String transactionHash) {
+        return track(transactionHash, properties.getConfirmations(), properties.getTimeout());
+    }
+
+    public CompletableFuture<TransactionReceipt> track(String transactionHash, int confirmations, Duration timeout) {
+        return pendingTransactions.computeIfAbsent(transactionHash.toLowerCase(Locale.ROOT),
+                hash -> new PendingTransaction(hash, confirmations, Instant.now().plus(timeout))).future;
+    }
+
+    public int getPendingCount() {
+        return pendingTransactions.size();
+    }
+
+    @Scheduled(fixedDelayString = "${ethereum.confirmation-tracker.poll-interval:PT1S}")
+    public void checkPendingTransactions() {
+        if (!pendingTransactions.isEmpty()) {
+            Try.run(this::checkReceipts).onFailure(e -> log.warn("Couldn't check pending transactions", e));
+        }
+    }
+
+    private void checkReceipts() {
+        final var now = Instant.now();
+        pendingTransactions.values().stream()
+                .filter(pendingTransaction -> now.isAfter(pendingTransaction.deadline))
+                .forEach(pendingTransaction -> complete(pendingTransaction, null,
+                        new TimeoutException("Tx " + pendingTransaction.hash + " wasn't confirmed in time")));
+
+        final var latestBlockNumber = Try.of(() -> web3j.ethBlockNumber().send().getBlockNumber())
+                .getOrElseThrow(e -> new RuntimeException("Cannot get latest block number", e));
+
+        // Each transaction is only checked once per block, as its receipt can't change until a new block arrives.
+        final var transactionsToCheck = pendingTransactions.values().stream()
+                .filter(pendingTransaction -> pendingTransaction.lastCheckedBlock == null || pendingTransaction.lastCheckedBlock.compareTo(latestBlockNumber) < 0)
+                .toList();
+
+        io.vavr.collection.List.ofAll(transactionsToCheck)
+                .grouped(properties.getMaxBatchSize())
+                .forEach(chunk -> checkReceipts(chunk.asJava(), latestBlockNumber));
+    }
+
+    private void checkReceipts(List<PendingTransaction> chunk, BigInteger latestBlockNumber) {
+        final var responses = jsonRpcBatchService.send(chunk.stream().map(pendingTransaction -> web3j.ethGetTransactionReceipt(pendingTransaction.hash)).toList());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            final var pendingTransaction = chunk.get(i);
+            final var response = responses.get(i);
+            pendingTransaction.lastCheckedBlock = latestBlockNumber;
+
+            if (response.hasError() || response.getResult() == null) {
+                continue;
+            }
+
+            final var receipt = response.getResult();
+            final var confirmations = latestBlockNumber.subtract(receipt.getBlockNumber()).add(BigInteger.ONE);
+            if (confirmations.compareTo(BigInteger.valueOf(pendingTransaction.confirmations)) >= 0) {
+                complete(pendingTransaction, receipt, null);
+            }
+        }
+    }
+
+    private void complete(PendingTransaction pendingTransaction, TransactionReceipt receipt, Throwable error) {
+        if (pendingTransactions.remove(pendingTransaction.hash, pendingTransaction)) {
+            if (error == null) {
+                pendingTransaction.future.complete(receipt);
+            } else {
+                pendingTransaction.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static final class PendingTransaction {
+        private final String hash;
+        private final int confirmations;
+        private final Instant deadline;
+        private final CompletableFuture<TransactionReceipt> future = new CompletableFuture<>();
+        private volatile BigInteger lastCheckedBlock;
+
+        private PendingTransaction(String hash, int confirmations, Instant deadline) {
+            this.hash = hash;
+            this.confirmations = confirmations;
+            this.deadline = deadline;
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+package com.technest.ethereum.tool.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technest.ethereum.tool.configuration.TransferIndexerConfigProperties;
+import com.technest.ethereum.tool.rpc.RoutingWeb3jService;
+import com.technest.ethereum.tool.rpc.RpcEndpoint;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.WalletUtils;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkState;
+
+// Detects incoming ERC-20 payments to watched addresses from Transfer events, retrieved with eth_getLogs over block ranges of the configured tokens, so the
+// cost depends on token activity instead of on the number of watched addresses. Blocks are only indexed once they are reorgDepth blocks deep.
+// Several consecutive ranges are retrieved in parallel. A range the node refuses because of too many results is split in halves (and those retried), and the
+// range size drops below the smallest size refused; it doubles back while ranges come back sparse. The size learnt is kept for following catch-ups.
+// Transfers to watched addresses are appended to a CSV file, and the last indexed block is checkpointed to a file after every round of ranges, so a restart
+// resumes where it stopped. A crash between both writes replays the last round, so payments are delivered at least once (transactionHash + logIndex is unique).
+// Every catch-up sticks to a single node, the one which gave the latest block number, as another node lagging behind it could return no logs for the newest
+// blocks, and those would be checkpointed as indexed.
+// Never lazy, not even in fast-start mode, so it indexes in background from startup when enabled.
+@Log4j2
+@Lazy(false)
+@Component
+@RequiredArgsConstructor
+public class TransferLogIndexer {
+
+    private static final Event TRANSFER_EVENT = new Event("Transfer",
+            List.of(new TypeReference<Address>(true) {}, new TypeReference<Address>(true) {}, new TypeReference<Uint256>(false) {}));
+    private static final String TRANSFER_TOPIC = EventEncoder.encode(TRANSFER_EVENT);
+    // Providers word it differently: "query returned more than 10000 results", "Log response size exceeded"...
+    private static final Pattern TOO_MANY_RESULTS = Pattern.compile("(?i)query returned more than \\d+ results|response size exceeded");
+    private static final int TOO_MANY_RESULTS_CODE = -32005;
+
+    private final RoutingWeb3jService ethereumNetworkService;
+    private final TransferIndexerConfigProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Map<RpcEndpoint, Web3j> nodes = new ConcurrentHashMap<>();
+    private final Set<String> watchedAddresses = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger rangeSize = new AtomicInteger();
+    private final AtomicLong transfersSeen = new AtomicLong();
+    private final AtomicLong incomingTransfers = new AtomicLong();
+    private final AtomicLong getLogsCalls = new AtomicLong();
+    private volatile BigInteger lastIndexedBlock;
+
+    public record IncomingTransfer(BigInteger blockNumber, String transactionHash, BigInteger logIndex, String token, String from, String to, BigInteger value) {
+    }
+
+    public record CatchUpResult(BigInteger fromBlock, BigInteger toBlock, long transfers, long incomingTransfers, long getLogsCalls, int rangeSize, Duration elapsed) {
+    }
+
+    public record Status(Option<BigInteger> lastIndexedBlock, int watchedAddresses, int rangeSize, long transfersSeen, long incomingTransfers, long getLogsCalls) {
+    }
+
+    private record Checkpoint(BigInteger lastIndexedBlock, List<String> tokens) {
+    }
+
+    private record Range(BigInteger from, BigInteger to) {
+
+        private long size() {
+            return to.subtract(from).longValueExact() + 1;
+        }
+
+    }
+
+    // Logs of a range, along with the smallest range size refused by the node while retrieving them, if any.
+    private record RangeLogs(List<Log> logs, long smallestRefusedSize) {
+
+        private static RangeLogs merge(RangeLogs first, RangeLogs second) {
+            return new RangeLogs(Stream.concat(first.logs.stream(), second.logs.stream()).toList(), Math.min(first.smallestRefusedSize, second.smallestRefusedSize));
+        }
+
+    }
+
+    @PostConstruct
+    void load() {
+        Option.of(properties.getWatchedAddressesFile()).map(Path::of).forEach(file -> log.info("Watching {} addresses from {}", watchFile(file), file));
+        checkpointFile().filter(Files::exists).forEach(file -> {
+            final var checkpoint = Try.of(() -> objectMapper.readValue(file.toFile(), Checkpoint.class))
+                    .getOrElseThrow(e -> new RuntimeException("Couldn't read transfer indexer checkpoint " + file, e));
+            if (!normalized(checkpoint.tokens()).equals(normalized(properties.getTokens()))) {
+                log.warn("Indexed tokens changed since the checkpoint, new tokens are only indexed from block {} on", checkpoint.lastIndexedBlock().add(BigInteger.ONE));
+            }
+            lastIndexedBlock = checkpoint.lastIndexedBlock();
+            log.info("Resuming transfer indexing after block {}", lastIndexedBlock);
+        });
+    }
+
+    // Returns how many addresses weren't watched already. Invalid addresses are ignored.
+    public int watch(Collection<String> addresses) {
+        return (int) addresses.stream()
+                .map(String::trim)
+                .filter(WalletUtils::isValidAddress)
+                .map(address -> Numeric.prependHexPrefix(address.toLowerCase(Locale.ROOT)))
+                .filter(watchedAddresses::add)
+                .count();
+    }
+
+    // Takes the last field of every line, so CSV files of derived deposit addresses can be watched as they are.
+    public int watchFile(Path file) {
+        try (final var lines = Files.lines(file)) {
+            return watch(lines.map(line -> line.substring(line.lastIndexOf(',') + 1)).toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read watched addresses from " + file, e);
+        }
+    }
+
+    public boolean isWatched(String address) {
+        return watchedAddresses.contains(address.toLowerCase(Locale.ROOT));
+    }
+
+    public Status getStatus() {
+        return new Status(Option.of(lastIndexedBlock), watchedAddresses.size(), getRangeSize(), transfersSeen.get(), incomingTransfers.get(), getLogsCalls.get());
+    }
+
+    @Scheduled(fixedDelayString = "${ethereum.transfer-indexer.poll-interval:PT12S}")
+    public void indexInBackground() {
+        if (properties.isEnabled()) {
+            Try.of(this::catchUp).onFailure(e -> log.warn("Couldn't index transfers, will retry after block {}", lastIndexedBlock, e));
+        }
+    }
+
+    // Indexes every block from the last indexed one up to the latest one deep enough not to be reorganized.
+    public synchronized CatchUpResult catchUp() {
+        checkState(!properties.getTokens().isEmpty(), "No tokens configured to index, see ethereum.transfer-indexer.tokens");
+
+        final var startTime = System.nanoTime();
+        final var nodeAndLatestBlockNumber = getLatestBlockNumber();
+        final var node = nodeAndLatestBlockNumber._1();
+        final var latestBlockNumber = nodeAndLatestBlockNumber._2();
+        final var safeBlockNumber = latestBlockNumber.subtract(BigInteger.valueOf(properties.getReorgDepth())).max(BigInteger.ZERO);
+        final var fromBlock = Option.of(lastIndexedBlock).map(BigInteger.ONE::add)
+                .orElse(Option.of(properties.getStartBlock()))
+                .getOrElse(safeBlockNumber);
+
+        final var callsBefore = getLogsCalls.get();
+        long transfers = 0;
+        long incoming = 0;
+        // Range sizes which were already refused in this catch-up aren't tried again.
+        var smallestRefusedSize = Long.MAX_VALUE;
+        var nextBlock = fromBlock;
+        while (nextBlock.compareTo(safeBlockNumber) <= 0) {
+            final var currentRangeSize = getRangeSize();
+            final var ranges = new ArrayList<Range>(properties.getParallelRanges());
+            while (ranges.size() < properties.getParallelRanges() && nextBlock.compareTo(safeBlockNumber) <= 0) {
+                final var to = nextBlock.add(BigInteger.valueOf(currentRangeSize - 1L)).min(safeBlockNumber);
+                ranges.add(new Range(nextBlock, to));
+                nextBlock = to.add(BigInteger.ONE);
+            }
+
+            final var futures = ranges.stream().map(range -> getLogsAsync(node, range)).toList();
+            final var rangeLogs = futures.stream().map(Futures::join).toList();
+            final var roundTransfers = rangeLogs.stream()
+                    .flatMap(logs -> logs.logs().stream())
+                    .map(TransferLogIndexer::toTransfer)
+                    .flatMap(Option::toJavaStream)
+                    .toList();
+            final var roundIncoming = roundTransfers.stream()
+                    .filter(transfer -> watchedAddresses.contains(transfer.to()))
+                    .sorted(Comparator.comparing(IncomingTransfer::blockNumber).thenComparing(IncomingTransfer::logIndex))
+                    .toList();
+
+            record(roundIncoming);
+            checkpoint(ranges.get(ranges.size() - 1).to());
+            transfers += roundTransfers.size();
+            incoming += roundIncoming.size();
+            transfersSeen.addAndGet(roundTransfers.size());
+            incomingTransfers.addAndGet(roundIncoming.size());
+            smallestRefusedSize = Math.min(smallestRefusedSize, rangeLogs.stream().mapToLong(RangeLogs::smallestRefusedSize).min().orElse(Long.MAX_VALUE));
+            adaptRangeSize(currentRangeSize, smallestRefusedSize, ranges, rangeLogs);
+        }
+
+        final var result = new CatchUpResult(fromBlock, safeBlockNumber, transfers, incoming, getLogsCalls.get() - callsBefore, getRangeSize(),
+                Duration.ofNanos(System.nanoTime() - startTime));
+        if (result.getLogsCalls() > 0) {
+            log.info("Indexed blocks {} to {}: {} transfers, {} incoming, {} eth_getLogs calls in {} ms", fromBlock, safeBlockNumber, transfers, incoming,
+                    result.getLogsCalls(), result.elapsed().toMillis());
+        }
+        return result;
+    }
+
+    // Range size drops to half the smallest range refused, or doubles (up to the smallest size refused) when full sized ranges came back sparse.
+    private void adaptRangeSize(int currentRangeSize, long smallestRefusedSize, List<Range> ranges, List<RangeLogs> rangeLogs) {
+        if (rangeLogs.stream().anyMatch(logs -> logs.smallestRefusedSize() < Long.MAX_VALUE)) {
+            rangeSize.compareAndSet(currentRangeSize, (int) Math.max(1, smallestRefusedSize / 2));
+            return;
+        }
+
+        final var fullSized = ranges.stream().allMatch(range -> range.size() == currentRangeSize);
+        final var logsPerRange = rangeLogs.stream().mapToInt(logs -> logs.logs().size()).average().orElse(0);
+        if (fullSized && logsPerRange < properties.getTargetLogsPerRange() / 2.0) {
+            final var grownRangeSize = Math.min(Math.min(properties.getMaxRangeSize(), smallestRefusedSize - 1), currentRangeSize * 2L);
+            rangeSize.compareAndSet(currentRangeSize, (int) Math.max(currentRangeSize, grownRangeSize));
+        }
+    }
+
+    // Asks the nodes from the fastest one on, until one of them answers.
+    private Tuple2<Web3j, BigInteger> getLatestBlockNumber() {
+        final var endpoints = ethereumNetworkService.getEndpoints().stream().sorted(Comparator.comparingLong(RpcEndpoint::getEwmaLatency)).toList();
+        Throwable lastError = null;
+        for (final var endpoint : endpoints) {
+            final var node = nodes.computeIfAbsent(endpoint, ignored -> Web3j.build(endpoint.getService()));
+            final var latestBlockNumber = Try.of(() -> node.ethBlockNumber().send().getBlockNumber());
+            if (latestBlockNumber.isSuccess()) {
+                return Tuple.of(node, latestBlockNumber.get());
+            }
+            log.debug("Couldn't get latest block number from {}", endpoint, latestBlockNumber.getCause());
+            lastError = latestBlockNumber.getCause();
+        }
+        throw new RuntimeException("Cannot get latest block number", lastError);
+    }
+
+    private CompletableFuture<RangeLogs> getLogsAsync(Web3j node, Range range) {
+        final var filter = new EthFilter(DefaultBlockParameter.valueOf(range.from()), DefaultBlockParameter.valueOf(range.to()), properties.getTokens())
+                .addSingleTopic(TRANSFER_TOPIC);
+        getLogsCalls.incrementAndGet();
+
+        return node.ethGetLogs(filter).sendAsync().thenCompose(response -> {
+            if (!response.hasError()) {
+                return CompletableFuture.completedFuture(new RangeLogs(response.getLogs().stream().map(result -> (Log) result.get()).toList(), Long.MAX_VALUE));
+            }
+            if (range.size() > 1 && isTooManyResults(response.getError())) {
+                log.debug("eth_getLogs refused blocks {} to {}, splitting them: {}", range.from(), range.to(), response.getError().getMessage());
+                final var middle = range.from().add(BigInteger.valueOf(range.size() / 2 - 1));
+                return getLogsAsync(node, new Range(range.from(), middle))
+                        .thenCombine(getLogsAsync(node, new Range(middle.add(BigInteger.ONE), range.to())), RangeLogs::merge)
+                        .thenApply(logs -> new RangeLogs(logs.logs(), Math.min(logs.smallestRefusedSize(), range.size())));
+            }
+            return CompletableFuture.failedFuture(
+                    new RuntimeException("Cannot get Transfer logs of blocks " + range.from() + " to " + range.to() + ": " + response.getError().getMessage()));
+        });
+    }
+
+    private void record(List<IncomingTransfer> transfers) {
+        transfers.forEach(transfer -> log.info("Incoming transfer of {} (token {}) from {} to {} in tx {}", transfer.value(), transfer.token(), transfer.from(),
+                transfer.to(), transfer.transactionHash()));
+
+        Option.of(properties.getPaymentsFile()).map(Path::of).filter(ignored -> !transfers.isEmpty()).forEach(file -> {
+            final var lines = new ArrayList<String>(transfers.size() + 1);
+            if (!Files.exists(file)) {
+                lines.add("blockNumber,transactionHash,logIndex,token,from,to,value");
+            }
+            transfers.forEach(transfer -> lines.add(String.join(",", transfer.blockNumber().toString(), transfer.transactionHash(), transfer.logIndex().toString(),
+                    transfer.token(), transfer.from(), transfer.to(), transfer.value().toString())));
+            Try.run(() -> Files.write(file, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+                    .getOrElseThrow(e -> new RuntimeException("Couldn't write incoming payments to " + file, e));
+        });
+    }
+
+    // The block is indexed already in memory even if the checkpoint can't be written, so a running indexer doesn't record the same payments twice.
+    private void checkpoint(BigInteger blockNumber) {
+        lastIndexedBlock = blockNumber;
+        checkpointFile().forEach(file -> Try.run(() -> {
+            final var tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(tmpFile.toFile(), new Checkpoint(blockNumber, properties.getTokens()));
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }).onFailure(e -> log.warn("Couldn't write transfer indexer checkpoint to {}", file, e)));
+    }
+
+    private static boolean isTooManyResults(Response.Error error) {
+        return error.getCode() == TOO_MANY_RESULTS_CODE || TOO_MANY_RESULTS.matcher(Option.of(error.getMessage()).getOrElse("")).find();
+    }
+
+    // ERC-721 Transfer events have the same signature, but with the token id indexed as well, so they come with 4 topics and are skipped.
+    private static Option<IncomingTransfer> toTransfer(Log transferLog) {
+        final var topics = transferLog.getTopics();
+        if (transferLog.isRemoved() || topics.size() != 3 || !TRANSFER_TOPIC.equals(topics.get(0))) {
+            return Option.none();
+        }
+        return Try.of(() -> new IncomingTransfer(transferLog.getBlockNumber(), transferLog.getTransactionHash(), transferLog.getLogIndex(),
+                        transferLog.getAddress().toLowerCase(Locale.ROOT), addressOf(topics.get(1)), addressOf(topics.get(2)), Numeric.toBigInt(transferLog.getData())))
+                .toOption();
+    }
+
+    private static String addressOf(String topic) {
+        return "0x" + Numeric.cleanHexPrefix(topic).substring(24).toLowerCase(Locale.ROOT);
+    }
+
+    private int getRangeSize() {
+        return rangeSize.updateAndGet(size -> size > 0 ? size : properties.getInitialRangeSize());
+    }
+
+    private Option<Path> checkpointFile() {
+        return Option.of(properties.getCheckpointFile()).map(Path::of);
+    }
+
+    private static List<String> normalized(List<String> addresses) {
+        return addresses.stream().map(address -> address.toLowerCase(Locale.ROOT)).sorted().toList();
+    }
+
+}
@@ -0,0 +1,6 @@
+package com.technest.ethereum.tool.service;
+
+import org.web3j.crypto.RawTransaction;
+
+public record UnsignedTransaction(String sourceAddress, RawTransaction rawTransaction, String rawTransactionInHex, String hashToSign) {
+}
@@ -0,0 +1,30 @@
+package com.technest.ethereum.tool.shell;
+
+import com.technest.ethereum.tool.service.DepositAddressDerivationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+
+import java.nio.file.Path;
+
+@RequiredArgsConstructor
+@ShellComponent("DepositAddress")
+public class DepositAddressShellComponent {
+
+    private final DepositAddressDerivationService depositAddressDerivationService;
+
+    @ShellMethod(key = "deriveDepositAddresses", value = "Derive count deposit addresses from an extended public key (xpub), starting at fromIndex, writing index,address lines to a CSV file.")
+    public String deriveDepositAddresses(String xpub, int fromIndex, int count, String outputFile) {
+        final var result = depositAddressDerivationService.deriveToFile(xpub, fromIndex, count, Path.of(outputFile));
+        return "Addresses derived: " + result.derived() + " - Elapsed: " + result.elapsed().toMillis() + " ms (" + String.format("%.1f", result.addressesPerSecond())
+                + " addresses/s) - Lookup table: " + result.lookupTableMemory() / 1024 + " KB off-heap";
+    }
+
+    @ShellMethod(key = "findDepositAddressIndex", value = "Find the derivation index of a deposit address, among the ones derived last.")
+    public String findDepositAddressIndex(String address) {
+        return depositAddressDerivationService.findIndex(address)
+                .map(index -> "Index: " + index)
+                .getOrElse("Not a derived deposit address");
+    }
+
+}
@@ -1,21 +1,41 @@
 package com.technest.ethereum.tool.shell;
 
 import com.technest.ethereum.tool.exchangerate.ExchangeRateService;
+import com.technest.ethereum.tool.service.BalanceScanService;
+import com.technest.ethereum.tool.service.BroadcastService;
+import com.technest.ethereum.tool.service.BulkBroadcastService;
 import com.technest.ethereum.tool.service.ERC20Service;
+import com.technest.ethereum.tool.service.ERC20TokenMetadata;
+import com.technest.ethereum.tool.service.ERC20TokenMetadataCache;
+import com.technest.ethereum.tool.service.FeeOracle;
+import com.technest.ethereum.tool.service.PortfolioScanService;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
 import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.DefaultBlockParameterName;
-import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
 import org.web3j.tx.Transfer;
 import org.web3j.utils.Convert;
 import org.web3j.utils.Numeric;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Log4j2
 @RequiredArgsConstructor
@@ -25,6 +45,12 @@ public class EthereumRPCShellComponent {
     private final Web3j web3j;
     private final ExchangeRateService exchangeRateService;
     private final ERC20Service erc20Service;
+    private final ERC20TokenMetadataCache erc20TokenMetadataCache;
+    private final FeeOracle feeOracle;
+    private final PortfolioScanService portfolioScanService;
+    private final BalanceScanService balanceScanService;
+    private final BroadcastService broadcastService;
+    private final BulkBroadcastService bulkBroadcastService;
 
     @ShellMethod(key = "ethRpcSendEthers", value = "Transfer ethers from an Ethereum account to another.")
     public String ethRpcSendEthers(String privateKey, String destinationAddress, BigDecimal amountInEthers) {
@@ -44,22 +70,20 @@ public class EthereumRPCShellComponent {
     }
 
     @ShellMethod(key = "ethRpcSendRawTx", value = "Send a raw transaction to be published in an Ethereum blockchain.")
-    public String ethRpcSendRawTx(String txInHex) throws InterruptedException {
-        final var result = Try.of(() -> web3j.ethSendRawTransaction(txInHex).send()).getOrElseThrow(e -> new RuntimeException("Couldn't send transaction", e));
-        if (!result.hasError()) {
-            EthGetTransactionReceipt transactionReceipt;
-            do {
-                Thread.sleep(3000);
-                transactionReceipt = Try.of(() -> web3j.ethGetTransactionReceipt(result.getTransactionHash()).send()).getOrElseThrow(e -> new RuntimeException("Couldn't get transaction receipt", e));
-                log.info("Tx sent with hash: {}", result.getTransactionHash());
-                log.info("Waiting for the receipt...");
-            } while(transactionReceipt.hasError() || transactionReceipt.getResult() == null);
-
-            final var feeCost = transactionReceipt.getResult().getGasUsed().multiply(Numeric.decodeQuantity(transactionReceipt.getResult().getEffectiveGasPrice()));
-            return "Tx sent with hash: " + result.getTransactionHash() + " - Fee cost in USD: " + exchangeRateService.fromWeisToUsd(feeCost);
-        } else {
-            throw new RuntimeException(result.getError().getMessage());
-        }
+    public String ethRpcSendRawTx(String txInHex) {
+        log.info("Waiting for the receipt...");
+        final var transactionReceipt = Try.of(() -> broadcastService.broadcastAndWaitAsync(txInHex).get())
+                .getOrElseThrow(e -> new RuntimeException(e instanceof ExecutionException ? e.getCause().getMessage() : "Couldn't send transaction", e.getCause()));
+
+        final var feeCost = transactionReceipt.getGasUsed().multiply(Numeric.decodeQuantity(transactionReceipt.getEffectiveGasPrice()));
+        return "Tx sent with hash: " + transactionReceipt.getTransactionHash() + " - Fee cost in USD: " + exchangeRateService.fromWeisToUsd(feeCost);
+    }
+
+    @ShellMethod(key = "ethRpcSendRawTxBatch", value = "Send every signed raw transaction of a file (one per line, or the last field of CSV lines), then wait for their receipts, writing the outcome of each one to a CSV report.")
+    public String ethRpcSendRawTxBatch(String inputFile, String reportFile, @ShellOption(defaultValue = "true") boolean waitForReceipts) {
+        final var result = bulkBroadcastService.broadcastFile(Path.of(inputFile), Path.of(reportFile), waitForReceipts);
+        return "Transactions: " + result.transactions() + " - Broadcast: " + result.broadcast() + " - Confirmed: " + result.confirmed() + " - Failed: " + result.failed()
+                + " - Batches: " + result.batches() + " - Elapsed: " + result.elapsed().toMillis() + " ms (" + String.format("%.1f", result.transactionsPerSecond()) + " tx/s)";
     }
 
     @ShellMethod(key = "ethRpcGetBalance", value = "See balance of an Ethereum account.")
@@ -70,14 +94,106 @@ public class EthereumRPCShellComponent {
                 "Balance in USD: " + exchangeRateService.fromWeisToUsd(result.getBalance());
     }
 
+    @ShellMethod(key = "ethRpcScanBalances", value = "Write ETH balance of every address in a file to a CSV file, all of them at the same block, using JSON-RPC batches.")
+    public String ethRpcScanBalances(String addressesFile, String outputFile, @ShellOption(defaultValue = "100") int batchSize,
+                                     @ShellOption(defaultValue = "4") int batchesInFlight) {
+        try (final var lines = Files.lines(Path.of(addressesFile)); final var writer = Files.newBufferedWriter(Path.of(outputFile))) {
+            writer.write("address,wei,usd");
+            writer.newLine();
+
+            final var addresses = lines.map(String::trim).filter(line -> !line.isEmpty() && !line.startsWith("#"));
+            final var result = balanceScanService.scan(addresses, batchSize, batchesInFlight, balances -> balances.forEach(balance -> Try.run(() -> {
+                writer.write(balance.address() + "," + balance.balance()
+                        .map(wei -> wei + "," + exchangeRateService.fromWeisToUsd(wei).toPlainString())
+                        .getOrElse("ERROR,"));
+                writer.newLine();
+            }).getOrElseThrow(e -> new RuntimeException("Couldn't write to " + outputFile, e))));
+
+            final var batchLatencies = result.batchLatencies();
+            return "Addresses scanned: " + result.addresses() + " - Failed: " + result.failed() + " - Block: " + result.blockNumber() + " - Batches: " + result.batches()
+                    + " - Elapsed: " + result.elapsed().toMillis() + " ms (" + String.format("%.1f", result.addressesPerSecond()) + " addresses/s)"
+                    + " - Batch latency p50/p95/p99: " + batchLatencies.getPercentile(0.5).toMillis() + "/" + batchLatencies.getPercentile(0.95).toMillis() + "/"
+                    + batchLatencies.getPercentile(0.99).toMillis() + " ms";
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't scan balances from " + addressesFile, e);
+        }
+    }
+
     @ShellMethod(key = "ethRpcGetBalanceFromERC20Token", value = "See balance of an Ethereum account within a given ERC-20 token.")
     public String ethRpcGetBalanceFromERC20Token(String contractAddress, String address) {
-        final var tokenName = erc20Service.getTokenName(contractAddress, address);
-        final var tokenSymbol = erc20Service.getTokenSymbol(contractAddress, address);
-        final var tokenDecimals = erc20Service.getTokenDecimals(contractAddress, address);
-        final var balance = erc20Service.getBalanceOf(contractAddress, address);
-        return "Balance of token (" + tokenName + "): " + new BigDecimal(balance).divide(BigDecimal.TEN.pow(tokenDecimals.intValue())) + " " + tokenSymbol;
+        final var tokenBalance = erc20Service.getTokenBalance(contractAddress, address);
+        return "Balance of token (" + tokenBalance.name() + "): " + tokenBalance.scaledBalance() + " " + tokenBalance.symbol();
     }
 
-}
+    @ShellMethod(key = "ethRpcScanPortfolio", value = "Write ETH and ERC-20 token balances (tokenContracts, comma separated) of every address in a file to a CSV file, all of them at the same block.")
+    public String ethRpcScanPortfolio(String addressesFile, String outputFile, @ShellOption(defaultValue = ShellOption.NULL) String tokenContracts) {
+        final var contracts = Option.of(tokenContracts)
+                .map(value -> Arrays.stream(value.split(",")).map(String::trim).filter(contract -> !contract.isEmpty()).distinct().toList())
+                .getOrElse(List.of());
+        // Token metadata is needed to scale balances, so it's retrieved (or taken from the cache) before the scan starts. Balances of a contract whose
+        // metadata can't be retrieved (e.g. it isn't a token) are written as errors, and the rest of the scan goes on.
+        final var tokenMetadata = contracts.stream().collect(Collectors.toMap(contract -> contract, contract -> Try.of(() -> erc20Service.getTokenMetadata(contract, contract))
+                .onFailure(e -> log.warn("Couldn't get token metadata of {}, its balances will be written as errors: {}", contract, e.getMessage()))
+                .toOption()));
+        final var failedRows = new AtomicLong();
 
+        try (final var lines = Files.lines(Path.of(addressesFile)); final var writer = Files.newBufferedWriter(Path.of(outputFile))) {
+            writer.write("address,asset,contract,balance");
+            writer.newLine();
+
+            final var queries = lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .flatMap(address -> Stream.concat(
+                            Stream.of(new PortfolioScanService.BalanceQuery(address, Option.none())),
+                            contracts.stream().map(contract -> new PortfolioScanService.BalanceQuery(address, Option.of(contract)))));
+            final var result = portfolioScanService.scan(queries, balances -> balances.forEach(balance -> Try.run(() -> {
+                final var withoutMetadata = balance.query().tokenContract().exists(contract -> tokenMetadata.get(contract).isEmpty());
+                if (withoutMetadata && balance.balance().isDefined()) {
+                    failedRows.incrementAndGet();
+                }
+                writer.write(toPortfolioRow(balance, tokenMetadata));
+                writer.newLine();
+            }).getOrElseThrow(e -> new RuntimeException("Couldn't write to " + outputFile, e))));
+
+            return "Balances scanned: " + result.balances() + " - Failed: " + (result.failed() + failedRows.get()) + " - Block: " + result.blockNumber()
+                    + " - Aggregate calls: " + result.aggregateCalls() + " (chunk size now " + result.chunkSize() + ") - Elapsed: " + result.elapsed().toMillis() + " ms";
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't scan portfolio from " + addressesFile, e);
+        }
+    }
+
+    @ShellMethod(key = "erc20MetadataCacheStats", value = "See how many ERC-20 token metadata lookups were served from the local cache.")
+    public String erc20MetadataCacheStats() {
+        return "Cached tokens: " + erc20TokenMetadataCache.size() + " - Hits: " + erc20TokenMetadataCache.getHits() + " - Misses: " + erc20TokenMetadataCache.getMisses();
+    }
+
+    @ShellMethod(key = "ethRpcGetFees", value = "See current network fees, as known by the fee oracle.")
+    public String ethRpcGetFees() {
+        final var feeSnapshot = feeOracle.getSnapshot();
+        return "Block: " + feeSnapshot.blockNumber()
+                + " - Base fee per gas: " + feeSnapshot.baseFeePerGas()
+                + " - Priority fee percentiles: " + feeSnapshot.priorityFeePercentiles()
+                + " - Max fee per gas: " + feeSnapshot.maxFeePerGas() + " (" + exchangeRateService.fromWeisToUsd(feeSnapshot.maxFeePerGas().multiply(BigInteger.valueOf(21000))) + " USD for a plain transfer)";
+    }
+
+    private static String toPortfolioRow(PortfolioScanService.BalanceResult balance, Map<String, Option<ERC20TokenMetadata>> tokenMetadata) {
+        final var query = balance.query();
+        final var metadata = query.tokenContract().flatMap(tokenMetadata::get);
+        final var asset = query.tokenContract().isEmpty() ? "ETH" : metadata.map(ERC20TokenMetadata::symbol).getOrElse("");
+        final var scaledBalance = balance.balance()
+                .flatMap(value -> query.tokenContract().isEmpty() ? Option.of(Convert.fromWei(new BigDecimal(value), Convert.Unit.ETHER))
+                        : metadata.map(token -> new BigDecimal(value, token.decimals().intValueExact())))
+                .map(BigDecimal::toPlainString)
+                .getOrElse("ERROR");
+
+        return String.join(",", query.address(), asset, query.tokenContract().getOrElse(""), scaledBalance);
+    }
+
+    @ShellMethod(key = "exchangeRates", value = "See exchange rates used to convert amounts to USD and how old they are.")
+    public String exchangeRates() {
+        final var exchangeRates = exchangeRateService.getExchangeRates();
+        return "BTC to USD: " + exchangeRates.btcToUsd() + " - ETH to USD: " + exchangeRates.ethToUsd()
+                + " - Age: " + exchangeRates.age().toSeconds() + " s" + (exchangeRates.fallback() ? " (fallback rates)" : "");
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.technest.ethereum.tool.shell;
+
+import com.technest.ethereum.tool.metrics.MetricsFileExporter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vavr.control.Option;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+@ShellComponent("Metrics")
+public class MetricsShellComponent {
+
+    private final MeterRegistry meterRegistry;
+    private final MetricsFileExporter metricsFileExporter;
+
+    @ShellMethod(key = "metrics", value = "See a live snapshot of JSON-RPC, rate governor, CoinGate and shell command metrics (optionally only the ones starting with prefix), most time consuming first.")
+    public String metrics(@ShellOption(defaultValue = ShellOption.NULL) String prefix) {
+        final var meters = meterRegistry.getMeters().stream()
+                .filter(meter -> Option.of(prefix).map(meter.getId().getName()::startsWith).getOrElse(true))
+                .toList();
+
+        final var timers = meters.stream()
+                .filter(Timer.class::isInstance)
+                .map(Timer.class::cast)
+                .filter(timer -> timer.count() > 0)
+                .sorted(Comparator.comparingDouble((Timer timer) -> timer.totalTime(TimeUnit.MILLISECONDS)).reversed())
+                .map(MetricsShellComponent::toRow);
+        final var counters = meters.stream()
+                .filter(Counter.class::isInstance)
+                .map(Counter.class::cast)
+                .sorted(Comparator.comparingDouble(Counter::count).reversed())
+                .map(counter -> nameAndTagsOf(counter) + " count=" + (long) counter.count());
+
+        final var gauges = meters.stream()
+                .filter(Gauge.class::isInstance)
+                .map(Gauge.class::cast)
+                .sorted(Comparator.comparing(MetricsShellComponent::nameAndTagsOf))
+                .map(gauge -> nameAndTagsOf(gauge) + " value=" + String.format("%.1f", gauge.value()));
+
+        final var rows = Stream.of(timers, counters, gauges).flatMap(Function.identity()).collect(Collectors.joining(System.lineSeparator()));
+        return rows.isEmpty() ? "No metrics recorded yet" : rows;
+    }
+
+    @ShellMethod(key = "metricsExport", value = "Write every metric in Prometheus text format to a file.")
+    public String metricsExport(String file) {
+        metricsFileExporter.exportTo(Path.of(file));
+        return "Metrics written to " + file;
+    }
+
+    private static String toRow(Timer timer) {
+        final var snapshot = timer.takeSnapshot();
+        final var percentiles = Arrays.stream(snapshot.percentileValues())
+                .map(percentile -> " p" + formatPercentile(percentile.percentile()) + "=" + formatMillis(percentile.value(TimeUnit.MILLISECONDS)))
+                .collect(Collectors.joining());
+
+        return nameAndTagsOf(timer) + " count=" + snapshot.count() + " total=" + formatMillis(snapshot.total(TimeUnit.MILLISECONDS))
+                + " mean=" + formatMillis(snapshot.mean(TimeUnit.MILLISECONDS)) + percentiles + " max=" + formatMillis(snapshot.max(TimeUnit.MILLISECONDS));
+    }
+
+    private static String nameAndTagsOf(Meter meter) {
+        return meter.getId().getName() + meter.getId().getTags().stream()
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static String formatPercentile(double percentile) {
+        return String.valueOf(percentile * 100).replaceAll("\\.0$", "");
+    }
+
+    private static String formatMillis(double millis) {
+        return String.format("%.1fms", millis);
+    }
+
+}
@@ -1,9 +1,13 @@
 package com.technest.ethereum.tool.shell;
 
+import com.technest.ethereum.tool.journal.JournaledTransaction;
+import com.technest.ethereum.tool.journal.TransactionJournal;
+import com.technest.ethereum.tool.service.BulkFileProcessor;
 import com.technest.ethereum.tool.service.EthereumAddressGeneratorService;
 import com.technest.ethereum.tool.service.EthereumTransactionService;
+import com.technest.ethereum.tool.service.NonceManager;
+import com.technest.ethereum.tool.service.SignatureAttachmentService;
 import io.vavr.control.Option;
-import io.vavr.control.Try;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.bitcoinj.core.ECKey;
@@ -11,28 +15,17 @@ import org.bitcoinj.core.Utils;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
-import org.web3j.crypto.CryptoUtils;
 import org.web3j.crypto.Hash;
-import org.web3j.crypto.Keys;
-import org.web3j.crypto.RawTransaction;
-import org.web3j.crypto.Sign;
 import org.web3j.crypto.TransactionDecoder;
-import org.web3j.crypto.TransactionEncoder;
-import org.web3j.crypto.transaction.type.TransactionType;
-import org.web3j.protocol.core.methods.response.EthChainId;
-import org.web3j.tx.ChainId;
 import org.web3j.utils.Numeric;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Arrays;
-import java.util.HexFormat;
-import java.util.Objects;
-import java.util.stream.IntStream;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
-import static org.web3j.crypto.TransactionEncoder.createEip155SignatureData;
-import static org.web3j.crypto.TransactionEncoder.encode;
 
 @Log4j2
 @RequiredArgsConstructor
@@ -41,90 +34,100 @@ public class TransactionShellComponent {
 
     private final EthereumAddressGeneratorService ethereumAddressGeneratorService;
     private final EthereumTransactionService ethereumTransactionService;
-    private final EthChainId ethChainId;
+    private final NonceManager nonceManager;
+    private final BulkFileProcessor bulkFileProcessor;
+    private final SignatureAttachmentService signatureAttachmentService;
+    private final TransactionJournal transactionJournal;
 
     @ShellMethod(key = "createUnsignedRawEthereumTx", value = "Create an unsigned raw Ethereum transaction.")
     public String createUnsignedRawEthereumTx(String pubKeyInHex, String destinationAddress, BigDecimal usdAmount, @ShellOption(defaultValue = ShellOption.NULL) String contractAddress) {
         final var pubKey = ECKey.fromPublicOnly(Utils.HEX.decode(pubKeyInHex));
         final var sourceAddress = ethereumAddressGeneratorService.generateAddressFrom(pubKey);
-        final var amountToSend = ethereumTransactionService.getTransactionAmount(sourceAddress, usdAmount, Option.of(contractAddress));
-        final var nonce = ethereumTransactionService.getNonceFor(sourceAddress);
-        final var maxFeePerGas = ethereumTransactionService.getMaxFeePerGas();
-        final var maxPriorityFeePerGas = ethereumTransactionService.getMaxPriorityFeePerGas();
-        final var gasLimit = ethereumTransactionService.estimateGasFor(nonce, destinationAddress, amountToSend, sourceAddress, Option.of(contractAddress));
-        final var transaction = Option.of(contractAddress).isEmpty() ?
-                ethereumTransactionService.createTransaction(nonce, destinationAddress, amountToSend, maxPriorityFeePerGas, maxFeePerGas, gasLimit):
-                ethereumTransactionService.createTransaction(nonce, destinationAddress, amountToSend, maxPriorityFeePerGas, maxFeePerGas, gasLimit, contractAddress);
-
-        final var ethRawTransactionInHex = HexFormat.of().formatHex(TransactionEncoder.encode(transaction));
-        log.info("Hash to sign: {}", Utils.HEX.encode(getEthereumHashToSign(transaction, ethChainId.getId())));
+        final var unsignedTransaction = ethereumTransactionService.createUnsignedTransaction(sourceAddress, destinationAddress, usdAmount, Option.of(contractAddress));
+
+        log.info("Hash to sign: {}", unsignedTransaction.hashToSign());
         log.info("You can decode the transaction in https://rawtxdecode.in/");
-        return ethRawTransactionInHex;
+        return unsignedTransaction.rawTransactionInHex();
     }
 
-    @ShellMethod(key = "addSignToUnsignedRawEthereumTx", value = "Add signature to an unsigned raw Ethereum transaction.")
-    public String addSignToUnsignedRawEthereumTx(String pubKeyInHex, String txInHex, String signatureInHex, String messageHashInHex) {
-        final var pubKey = ECKey.fromPublicOnly(Utils.HEX.decode(pubKeyInHex));
-        final var sourceAddress = ethereumAddressGeneratorService.generateAddressFrom(pubKey);
+    @ShellMethod(key = "createUnsignedRawEthereumTxBatch", value = "Create unsigned raw Ethereum transactions for every pubKeyInHex,destinationAddress,usdAmount[,contractAddress] line of a CSV file.")
+    public String createUnsignedRawEthereumTxBatch(String inputFile, String outputFile, @ShellOption(defaultValue = "8") int concurrency) {
+        // Source address is cached per public key, as payout files usually have lots of rows from the same hot wallet.
+        final var sourceAddresses = new ConcurrentHashMap<String, String>();
+        final var result = bulkFileProcessor.process(Path.of(inputFile), Path.of(outputFile), "sourceAddress,nonce,unsignedRawTx,hashToSign", concurrency, line -> {
+            final var fields = line.split(",", -1);
+            checkArgument(fields.length == 3 || fields.length == 4, "Expected pubKeyInHex,destinationAddress,usdAmount[,contractAddress] but got: " + line);
 
-        // It has to be in canonical form because of:
-        //   https://github.com/ethereum/EIPs/blob/master/EIPS/eip-2.md
-        //   All transaction signatures whose s-value is greater than secp256k1n/2 are now considered invalid. The ECDSA recover precompiled contract remains unchanged
-        //   and will keep accepting high s-values; this is useful e.g. if a contract recovers old Bitcoin signatures.
-        final var ecdsaSignature = toECDSASignature(Utils.HEX.decode(signatureInHex.toLowerCase())).toCanonicalised();
+            final var sourceAddress = sourceAddresses.computeIfAbsent(fields[0].trim(),
+                    pubKeyInHex -> ethereumAddressGeneratorService.generateAddressFrom(ECKey.fromPublicOnly(Utils.HEX.decode(pubKeyInHex))));
+            final var maybeContractAddress = Option.when(fields.length == 4, () -> fields[3].trim()).filter(contractAddress -> !contractAddress.isEmpty());
+            final var unsignedTransaction = ethereumTransactionService.createUnsignedTransaction(sourceAddress, fields[1].trim(), new BigDecimal(fields[2].trim()), maybeContractAddress);
 
-        // Check if signature is correct, recovering the public key from the signature, checking if sourceAddress and recoveredAddress are the same.
-        final var recoveredAddress = IntStream.rangeClosed(0, 3).boxed()
-                .map(i -> Try.of(() -> Sign.recoverFromSignature(i, CryptoUtils.fromDerFormat(ecdsaSignature.encodeToDER()), Utils.HEX.decode(messageHashInHex))))
-                .map(Try::getOrNull)
-                .filter(Objects::nonNull)
-                .map(Keys::getAddress)
-                .filter(address -> Numeric.prependHexPrefix(address).equals(sourceAddress)).findFirst();
-        checkState(recoveredAddress.isPresent(), "Something wrong happened while doing the signature");
+            return String.join(",", sourceAddress, unsignedTransaction.rawTransaction().getNonce().toString(), unsignedTransaction.rawTransactionInHex(), unsignedTransaction.hashToSign());
+        });
 
-        final var uncompressedPublicKey = pubKey.decompress().getPubKey();
-        final var uncompressedPublicKeyWithoutPrefix = Arrays.copyOfRange(uncompressedPublicKey, 1, uncompressedPublicKey.length);
+        return "Transactions created: " + (result.processed() - result.failed()) + " - Failed: " + result.failed() + " - Elapsed: " + result.elapsed().toMillis() + " ms ("
+                + String.format("%.1f", result.linesPerSecond()) + " tx/s)";
+    }
 
-        final var signatureData = Sign.createSignatureData(CryptoUtils.fromDerFormat(ecdsaSignature.encodeToDER()), new BigInteger(Utils.HEX.encode(uncompressedPublicKeyWithoutPrefix), 16), Utils.HEX.decode(messageHashInHex));
-        final var signedTransaction = addSignatureToEthereumTx(TransactionDecoder.decode(txInHex), signatureData, ethChainId.getId());
+    @ShellMethod(key = "addSignToUnsignedRawEthereumTx", value = "Add signature to an unsigned raw Ethereum transaction.")
+    public String addSignToUnsignedRawEthereumTx(String pubKeyInHex, String txInHex, String signatureInHex, String messageHashInHex) {
+        final var pubKey = ECKey.fromPublicOnly(Utils.HEX.decode(pubKeyInHex.toLowerCase()));
+        final var signedTransaction = signatureAttachmentService.attachSignature(pubKey.getPubKeyPoint(), TransactionDecoder.decode(txInHex),
+                Utils.HEX.decode(signatureInHex.toLowerCase()), Utils.HEX.decode(messageHashInHex.toLowerCase()));
 
         log.info("You can decode the transaction in https://rawtxdecode.in/");
         return Numeric.toHexString(signedTransaction);
     }
 
-    private static ECKey.ECDSASignature toECDSASignature(byte[] signature) {
-        final var n = signature.length / 2;
-        final var r = Arrays.copyOfRange(signature, 0, n);
-        final var s = Arrays.copyOfRange(signature, n, 2 * n);
-
-        return new ECKey.ECDSASignature(new BigInteger(1, r), new BigInteger(1, s));
+    @ShellMethod(key = "addSignToUnsignedRawEthereumTxBatch", value = "Add signatures made with the given public key to every unsignedRawTx,signature,hashToSign line of a CSV file.")
+    public String addSignToUnsignedRawEthereumTxBatch(String pubKeyInHex, String inputFile, String outputFile,
+                                                      @ShellOption(defaultValue = ShellOption.NULL) Integer concurrency) {
+        // Signature checks are CPU bound, so by default there's a thread per core.
+        final var threads = Option.of(concurrency).getOrElse(() -> Runtime.getRuntime().availableProcessors());
+        final var publicKey = ECKey.fromPublicOnly(Utils.HEX.decode(pubKeyInHex.toLowerCase())).getPubKeyPoint();
+        final var result = bulkFileProcessor.process(Path.of(inputFile), Path.of(outputFile), "txHash,signedRawTx", threads, line -> {
+            final var fields = line.split(",", -1);
+            checkArgument(fields.length == 3, "Expected unsignedRawTx,signature,hashToSign but got: " + line);
+
+            final var signedTransaction = signatureAttachmentService.attachSignature(publicKey, TransactionDecoder.decode(fields[0].trim()),
+                    Utils.HEX.decode(Numeric.cleanHexPrefix(fields[1].trim()).toLowerCase()), Utils.HEX.decode(Numeric.cleanHexPrefix(fields[2].trim()).toLowerCase()));
+            final var signedTransactionInHex = Numeric.toHexString(signedTransaction);
+            return Hash.sha3(signedTransactionInHex) + "," + signedTransactionInHex;
+        });
+
+        return "Transactions signed: " + (result.processed() - result.failed()) + " - Failed: " + result.failed() + " - Elapsed: " + result.elapsed().toMillis() + " ms ("
+                + String.format("%.1f", result.linesPerSecond()) + " tx/s)";
     }
 
-    private byte[] getEthereumHashToSign(RawTransaction rawTransaction, long chainId) {
-        byte[] encodedTransaction;
-
-        // Legacy tx is tx before Eip1559, should have chainId as an additional parameter.
-        // After Eip1559 chainId is a part of tx.
-        boolean isLegacy =
-                chainId > ChainId.NONE && rawTransaction.getType().equals(TransactionType.LEGACY);
-
-        if (isLegacy) {
-            encodedTransaction = encode(rawTransaction, chainId);
-        } else {
-            encodedTransaction = encode(rawTransaction);
-        }
+    @ShellMethod(key = "journalLookup", value = "See what the transaction journal knows about a transaction, given its hash (or hash to sign), or its sender and nonce.")
+    public String journalLookup(@ShellOption(defaultValue = ShellOption.NULL) String hash, @ShellOption(defaultValue = ShellOption.NULL) String sender,
+                                @ShellOption(defaultValue = ShellOption.NULL) BigInteger nonce) {
+        checkState(transactionJournal.isEnabled(), "Transaction journal is disabled, set ethereum.journal.file to enable it");
+        checkArgument(hash != null || (sender != null && nonce != null), "Either hash, or sender and nonce, must be given");
+
+        return Option.of(hash)
+                .flatMap(transactionJournal::findByHash)
+                .orElse(() -> Option.of(sender).flatMap(address -> transactionJournal.findBySenderAndNonce(address, nonce)))
+                .map(JournaledTransaction::toString)
+                .getOrElse("Transaction not found in the journal");
+    }
 
-        return Hash.sha3(encodedTransaction);
+    @ShellMethod(key = "journalStats", value = "See how many records and transactions the transaction journal has.")
+    public String journalStats() {
+        return transactionJournal.isEnabled()
+                ? "Journal records: " + transactionJournal.getRecordCount() + " - Transactions: " + transactionJournal.getTransactionCount()
+                : "Transaction journal is disabled";
     }
 
-    private byte[] addSignatureToEthereumTx(RawTransaction rawTransaction, Sign.SignatureData signatureData, long chainId) {
-        boolean isLegacy =
-                chainId > ChainId.NONE && rawTransaction.getType().equals(TransactionType.LEGACY);
-        if (isLegacy) {
-            signatureData = createEip155SignatureData(signatureData, chainId);
-        }
+    @ShellMethod(key = "nonceStatus", value = "See next nonce to be used for an Ethereum account and how many nonces handed out are still unknown to the node.")
+    public String nonceStatus(String address) {
+        return "Next nonce: " + nonceManager.peekNonce(address) + " - Nonces not yet seen by the node: " + nonceManager.getGap(address);
+    }
 
-        return encode(rawTransaction, signatureData);
+    @ShellMethod(key = "nonceReset", value = "Discard nonces handed out for an Ethereum account which were never broadcast, syncing it again from the node.")
+    public String nonceReset(String address) {
+        return "Next nonce: " + nonceManager.reset(address);
     }
 
 }
@@ -0,0 +1,42 @@
+package com.technest.ethereum.tool.shell;
+
+import com.technest.ethereum.tool.service.TransferLogIndexer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+@RequiredArgsConstructor
+@ShellComponent("TransferIndexer")
+public class TransferIndexerShellComponent {
+
+    private final TransferLogIndexer transferLogIndexer;
+
+    @ShellMethod(key = "indexerWatch", value = "Watch incoming ERC-20 transfers to the given comma separated addresses.")
+    public String indexerWatch(String addresses) {
+        return "Addresses added: " + transferLogIndexer.watch(Arrays.asList(addresses.split(","))) + " - Watched: " + transferLogIndexer.getStatus().watchedAddresses();
+    }
+
+    @ShellMethod(key = "indexerWatchFile", value = "Watch incoming ERC-20 transfers to the addresses of a file, one per line (or index,address lines, as written by deriveDepositAddresses).")
+    public String indexerWatchFile(String file) {
+        return "Addresses added: " + transferLogIndexer.watchFile(Path.of(file)) + " - Watched: " + transferLogIndexer.getStatus().watchedAddresses();
+    }
+
+    @ShellMethod(key = "indexerCatchUp", value = "Index ERC-20 transfers of every block up to the latest one safe from reorgs, now.")
+    public String indexerCatchUp() {
+        final var result = transferLogIndexer.catchUp();
+        return "Blocks: " + result.fromBlock() + " to " + result.toBlock() + " - Transfers: " + result.transfers() + " - Incoming: " + result.incomingTransfers()
+                + " - eth_getLogs calls: " + result.getLogsCalls() + " - Range size: " + result.rangeSize() + " - Elapsed: " + result.elapsed().toMillis() + " ms";
+    }
+
+    @ShellMethod(key = "indexerStatus", value = "See how far ERC-20 transfers have been indexed.")
+    public String indexerStatus() {
+        final var status = transferLogIndexer.getStatus();
+        return "Last indexed block: " + status.lastIndexedBlock().map(Object::toString).getOrElse("none") + " - Watched addresses: " + status.watchedAddresses()
+                + " - Range size: " + status.rangeSize() + " - Transfers seen: " + status.transfersSeen() + " - Incoming: " + status.incomingTransfers()
+                + " - eth_getLogs calls: " + status.getLogsCalls();
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.technest.ethereum.tool.exchangerate;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static com.technest.ethereum.tool.exchangerate.FixedPointMath.NOT_REPRESENTABLE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FixedPointMathTest {
+
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final long[] BOUNDARY_VALUES = {0, 1, 2, 3, 5, 10, 999_999_999, 1_000_000_000, 1L << 32, (1L << 32) - 1, 1_000_000_000_000_000_000L,
+            Long.MAX_VALUE / 2, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+
+    private final Random random = new Random(20230601);
+
+    @Test
+    void multiplyDivideHalfUpRoundsLikeBigDecimal() {
+        for (final var a : BOUNDARY_VALUES) {
+            for (final var b : BOUNDARY_VALUES) {
+                for (final var divisor : BOUNDARY_VALUES) {
+                    if (divisor > 0) {
+                        checkMultiplyDivideHalfUp(a, b, divisor);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 100_000; i++) {
+            checkMultiplyDivideHalfUp(randomLong(), randomLong(), Math.max(1, randomLong()));
+        }
+    }
+
+    @Test
+    void multiplyDivideHalfUpRoundsExactHalvesUp() {
+        for (int i = 0; i < 100_000; i++) {
+            final var divisor = Math.max(1, randomLong() >>> 2) * 2;
+            final var quotient = random.nextLong(Long.MAX_VALUE / divisor);
+            final var a = quotient * divisor + divisor / 2;
+
+            assertThat(FixedPointMath.multiplyDivideHalfUp(a, 1, divisor)).as("%d / %d", a, divisor).isEqualTo(quotient + 1);
+            checkMultiplyDivideHalfUp(a, 1, divisor);
+            checkMultiplyDivideHalfUp(a - 1, 1, divisor);
+        }
+    }
+
+    @Test
+    void multiplyByPowerOfTenDivideGivesQuotientAndRemainder() {
+        for (int exponent = 0; exponent <= 36; exponent++) {
+            for (final var a : BOUNDARY_VALUES) {
+                for (final var divisor : BOUNDARY_VALUES) {
+                    if (divisor > 0) {
+                        checkMultiplyByPowerOfTenDivide(a, exponent, divisor);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 100_000; i++) {
+            checkMultiplyByPowerOfTenDivide(randomLong(), random.nextInt(37), Math.max(1, randomLong()));
+        }
+    }
+
+    @Test
+    void powerOfTenIsOnlyRepresentableUpTo18() {
+        assertThat(LongStream.rangeClosed(0, 18).map(exponent -> FixedPointMath.powerOfTen((int) exponent)).toArray())
+                .containsExactly(LongStream.rangeClosed(0, 18).map(exponent -> BigInteger.TEN.pow((int) exponent).longValueExact()).toArray());
+        assertThat(FixedPointMath.powerOfTen(19)).isEqualTo(NOT_REPRESENTABLE);
+        assertThat(FixedPointMath.powerOfTen(-1)).isEqualTo(NOT_REPRESENTABLE);
+    }
+
+    private static void checkMultiplyDivideHalfUp(long a, long b, long divisor) {
+        final var expected = new BigDecimal(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)))
+                .divide(BigDecimal.valueOf(divisor), 0, RoundingMode.HALF_UP)
+                .toBigIntegerExact();
+
+        assertThat(FixedPointMath.multiplyDivideHalfUp(a, b, divisor))
+                .as("%d * %d / %d", a, b, divisor)
+                .isEqualTo(expected.compareTo(MAX_LONG) <= 0 ? expected.longValueExact() : NOT_REPRESENTABLE);
+    }
+
+    // Results which don't fit in a long, and intermediate products overflowing when the exponent is over 18, give NOT_REPRESENTABLE.
+    private static void checkMultiplyByPowerOfTenDivide(long a, int exponent, long divisor) {
+        final var expected = BigInteger.valueOf(a).multiply(BigInteger.TEN.pow(exponent)).divideAndRemainder(BigInteger.valueOf(divisor));
+        final var remainder = new long[1];
+        final var quotient = FixedPointMath.multiplyByPowerOfTenDivide(a, exponent, divisor, remainder);
+
+        final var description = String.format("%d * 10^%d / %d", a, exponent, divisor);
+        if (expected[0].compareTo(MAX_LONG) > 0) {
+            assertThat(quotient).as(description).isEqualTo(NOT_REPRESENTABLE);
+        } else if (quotient != NOT_REPRESENTABLE || exponent <= 18) {
+            assertThat(quotient).as(description).isEqualTo(expected[0].longValueExact());
+            assertThat(remainder[0]).as(description).isEqualTo(expected[1].longValueExact());
+        }
+    }
+
+    // Spread over every magnitude, as uniformly random longs are almost always huge.
+    private long randomLong() {
+        return (random.nextLong() >>> 1) >>> random.nextInt(63);
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.technest.ethereum.tool.exchangerate;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Every conversion must give exactly what BigDecimal gives, rounding HALF_UP to 9 decimal positions, whether it's done with integer arithmetic or not.
+class UnitConverterTest {
+
+    private static final int DECIMAL_POSITIONS = 9;
+    private static final List<String> BOUNDARY_RATES = List.of("30607.10", "1922.51", "1", "2", "0.05", "0.000000001", "1E+3", "123456789.123456789",
+            "9223372036854775807", "92233720368547758070", "0.1234567890123456789");
+
+    private final Random random = new Random(20230601);
+
+    @Test
+    void unitsToUsdRoundLikeBigDecimal() {
+        for (final var rate : rates()) {
+            final var converter = converterFor(rate);
+            for (final var units : units()) {
+                assertThat(converter.fromSatoshisToUsd(units)).as("%d satoshis at %s", units, rate).isEqualTo(toUsd(BigInteger.valueOf(units), rate, 8));
+                final var bigUnits = BigInteger.valueOf(units);
+                assertThat(converter.fromWeisToUsd(bigUnits)).as("%d weis at %s", units, rate).isEqualTo(toUsd(bigUnits, rate, 18));
+                assertThat(converter.fromGweisToUsd(bigUnits)).as("%d gweis at %s", units, rate).isEqualTo(toUsd(bigUnits, rate, 9));
+            }
+        }
+    }
+
+    @Test
+    void usdToUnitsRoundLikeBigDecimal() {
+        for (final var rate : rates()) {
+            final var converter = converterFor(rate);
+            for (final var usd : usdAmounts()) {
+                assertThat(converter.fromUsdToSatoshis(usd)).as("%s USD at %s", usd, rate).isEqualTo(fromUsd(usd, rate, 8).longValue());
+                assertThat(converter.fromUsdToWeis(usd)).as("%s USD at %s", usd, rate).isEqualTo(fromUsd(usd, rate, 18));
+                assertThat(converter.fromUsdToGweis(usd)).as("%s USD at %s", usd, rate).isEqualTo(fromUsd(usd, rate, 9));
+            }
+        }
+    }
+
+    // Worth exactly half a nano USD (or half a nano unit) more than a whole number of nanos, so the last digit rounds up.
+    @Test
+    void exactHalvesRoundUp() {
+        final var converter = converterFor(new BigDecimal("0.05"));
+        assertThat(converter.fromSatoshisToUsd(1)).isEqualTo(new BigDecimal("0.000000001"));
+        assertThat(converter.fromSatoshisToUsd(3)).isEqualTo(new BigDecimal("0.000000002"));
+
+        final var unitRateConverter = converterFor(BigDecimal.ONE);
+        assertThat(unitRateConverter.fromUsdToSatoshis(new BigDecimal("0.000000009999999995"))).isEqualTo(1);
+        assertThat(unitRateConverter.fromUsdToSatoshis(new BigDecimal("0.000000009999999994"))).isZero();
+        assertThat(unitRateConverter.fromUsdToGweis(new BigDecimal("0.0000000009999999995"))).isEqualTo(BigInteger.ONE);
+        assertThat(unitRateConverter.fromUsdToGweis(new BigDecimal("0.0000000009999999994"))).isEqualTo(BigInteger.ZERO);
+    }
+
+    @Test
+    void convertsTheLargestAmounts() {
+        final var converter = converterFor(new BigDecimal("1922.51"));
+
+        assertThat(converter.fromSatoshisToUsd(Long.MAX_VALUE)).isEqualTo(toUsd(BigInteger.valueOf(Long.MAX_VALUE), new BigDecimal("1922.51"), 8));
+        final var maxUsd = new BigDecimal(Long.MAX_VALUE).movePointLeft(2);
+        assertThat(converter.fromUsdToWeis(maxUsd)).isEqualTo(fromUsd(maxUsd, new BigDecimal("1922.51"), 18));
+    }
+
+    private List<BigDecimal> rates() {
+        final var rates = new ArrayList<BigDecimal>();
+        BOUNDARY_RATES.forEach(rate -> rates.add(new BigDecimal(rate)));
+        for (int i = 0; i < 40; i++) {
+            rates.add(BigDecimal.valueOf(1 + random.nextLong(10_000_000_000L), random.nextInt(13)));
+        }
+        return rates;
+    }
+
+    private List<Long> units() {
+        final var units = new ArrayList<>(List.of(0L, 1L, 2L, 5L, 99_999_999L, 100_000_000L, 1_000_000_000_000_000_000L, Long.MAX_VALUE / 2, Long.MAX_VALUE));
+        for (int i = 0; i < 500; i++) {
+            units.add((random.nextLong() >>> 1) >>> random.nextInt(63));
+        }
+        return units;
+    }
+
+    private List<BigDecimal> usdAmounts() {
+        final var usdAmounts = new ArrayList<>(List.of(BigDecimal.ZERO, new BigDecimal("0.00"), new BigDecimal("0.000000001"), new BigDecimal("0.5"),
+                new BigDecimal("1.005"), new BigDecimal("100"), new BigDecimal("1E+6"), BigDecimal.valueOf(Long.MAX_VALUE, 9), BigDecimal.valueOf(Long.MAX_VALUE)));
+        for (int i = 0; i < 200; i++) {
+            usdAmounts.add(BigDecimal.valueOf((random.nextLong() >>> 1) >>> random.nextInt(63), random.nextInt(19)));
+        }
+        return usdAmounts;
+    }
+
+    private static UnitConverter converterFor(BigDecimal rate) {
+        return new UnitConverter(new ExchangeRates(rate, rate, Instant.now(), false));
+    }
+
+    // Dividing by a power of ten is exact, so the result only gets rounded once.
+    private static BigDecimal toUsd(BigInteger units, BigDecimal rate, int unitsPerCoinExponent) {
+        return new BigDecimal(units).multiply(rate).movePointLeft(unitsPerCoinExponent).setScale(DECIMAL_POSITIONS, RoundingMode.HALF_UP);
+    }
+
+    private static BigInteger fromUsd(BigDecimal usd, BigDecimal rate, int unitsPerCoinExponent) {
+        return usd.movePointRight(unitsPerCoinExponent).divide(rate, DECIMAL_POSITIONS, RoundingMode.HALF_UP).toBigInteger();
+    }
+
+}
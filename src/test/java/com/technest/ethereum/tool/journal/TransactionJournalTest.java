@@ -0,0 +1,257 @@
+package com.technest.ethereum.tool.journal;
+
+import com.technest.ethereum.tool.configuration.JournalConfigProperties;
+import io.vavr.control.Option;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The journal is only useful if what was appended before a restart, or a crash, comes back on replay, and a torn record doesn't bring back anything wrong.
+class TransactionJournalTest {
+
+    private static final String SENDER = "0x00000000000000000000000000000000000000a1";
+    private static final String OTHER_SENDER = "0x00000000000000000000000000000000000000b2";
+
+    private JournalConfigProperties properties;
+    private TransactionJournal journal;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        properties = new JournalConfigProperties();
+        properties.setFile(tempDir.resolve("journal.bin").toString());
+        // Small enough for the tests to grow the file.
+        properties.setInitialSize(DataSize.ofBytes(512));
+        journal = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    void replaysTheRecordsAfterReopening() throws IOException {
+        final var confirmed = Transaction.of(0, "confirmed");
+        confirmed.record(journal);
+        journal.recordBroadcast(SENDER, BigInteger.ZERO, confirmed.transactionHash(), Option.none());
+        journal.recordReceipt(SENDER, BigInteger.ZERO, confirmed.transactionHash(), BigInteger.valueOf(1234), true);
+        final var signed = Transaction.of(1, "signed");
+        signed.record(journal);
+
+        journal = reopen();
+
+        assertThat(journal.isEnabled()).isTrue();
+        assertThat(journal.getRecordCount()).isEqualTo(6);
+        assertThat(journal.getTransactionCount()).isEqualTo(2);
+        final var replayed = journal.findBySenderAndNonce(SENDER, BigInteger.ZERO).get();
+        assertThat(replayed.status()).isEqualTo(JournalRecordType.CONFIRMED);
+        assertThat(replayed.hashToSign()).isEqualTo(confirmed.hashToSign());
+        assertThat(replayed.unsignedRawTransaction()).isEqualTo(Numeric.toHexString(confirmed.unsigned()));
+        assertThat(replayed.transactionHash()).isEqualTo(confirmed.transactionHash());
+        assertThat(replayed.signedRawTransaction()).isEqualTo(Numeric.toHexString(confirmed.signed()));
+        assertThat(replayed.blockNumber()).isEqualTo(1234);
+        assertThat(journal.findByHash(confirmed.hashToSign())).contains(replayed);
+        assertThat(journal.findByHash(confirmed.transactionHash().toUpperCase().replace("0X", ""))).contains(replayed);
+        assertThat(journal.findByHash(signed.transactionHash()).map(JournaledTransaction::status)).contains(JournalRecordType.SIGNED);
+        assertThat(journal.getNextNonce(SENDER)).contains(BigInteger.ONE);
+
+        // Appending after a replay carries on where the journal ended.
+        journal.recordBroadcast(SENDER, BigInteger.ONE, signed.transactionHash(), Option.none());
+        journal = reopen();
+
+        assertThat(journal.getRecordCount()).isEqualTo(7);
+        assertThat(journal.getNextNonce(SENDER)).contains(BigInteger.TWO);
+    }
+
+    @Test
+    void onlyBroadcastAndMinedTransactionsAdvanceTheNextNonce() throws IOException {
+        final var built = Transaction.of(5, "built");
+        journal.recordBuilt(SENDER, built.nonce(), Numeric.hexStringToByteArray(built.hashToSign()), built.unsigned());
+        assertThat(journal.getNextNonce(SENDER)).isEmpty();
+
+        journal.recordSigned(SENDER, built.nonce(), built.signed());
+        assertThat(journal.getNextNonce(SENDER)).isEmpty();
+
+        journal.recordBroadcast(SENDER, built.nonce(), built.transactionHash(), Option.some("nonce too low"));
+        assertThat(journal.getNextNonce(SENDER)).isEmpty();
+
+        journal.recordBroadcast(SENDER, built.nonce(), built.transactionHash(), Option.none());
+        assertThat(journal.getNextNonce(SENDER)).contains(BigInteger.valueOf(6));
+
+        final var confirmed = Transaction.of(8, "confirmed");
+        confirmed.record(journal);
+        journal.recordReceipt(SENDER, confirmed.nonce(), confirmed.transactionHash(), BigInteger.TEN, true);
+        assertThat(journal.getNextNonce(SENDER)).contains(BigInteger.valueOf(9));
+
+        // A reverted transaction still took its nonce.
+        final var reverted = Transaction.of(3, "reverted");
+        journal.recordReceipt(OTHER_SENDER, reverted.nonce(), reverted.transactionHash(), BigInteger.TEN, false);
+        assertThat(journal.getNextNonce(OTHER_SENDER)).contains(BigInteger.valueOf(4));
+
+        // A lower nonce never moves it back.
+        final var older = Transaction.of(2, "older");
+        journal.recordBroadcast(SENDER, older.nonce(), older.transactionHash(), Option.none());
+        assertThat(journal.getNextNonce(SENDER)).contains(BigInteger.valueOf(9));
+
+        journal = reopen();
+
+        assertThat(journal.getNextNonce(SENDER)).contains(BigInteger.valueOf(9));
+        assertThat(journal.getNextNonce(OTHER_SENDER.toUpperCase().replace("0X", "0x"))).contains(BigInteger.valueOf(4));
+        assertThat(journal.findBySenderAndNonce(OTHER_SENDER, reverted.nonce()).map(JournaledTransaction::status)).contains(JournalRecordType.REVERTED);
+    }
+
+    @Test
+    void discardsATornLastRecord() throws IOException {
+        final var transaction = Transaction.of(0, "torn");
+        transaction.record(journal);
+        journal.recordBroadcast(SENDER, BigInteger.ZERO, transaction.transactionHash(), Option.none());
+        journal.close();
+
+        final var offsets = recordOffsets();
+        assertThat(offsets).hasSize(3);
+        // Flip a byte of the hash of the broadcast record, as if the machine went down halfway through writing it.
+        corruptByteAt(offsets.get(2) + 2 * Integer.BYTES + 1 + Long.BYTES + 20 + Long.BYTES);
+
+        journal = open();
+
+        assertThat(journal.getRecordCount()).isEqualTo(2);
+        assertThat(journal.findBySenderAndNonce(SENDER, BigInteger.ZERO).map(JournaledTransaction::status)).contains(JournalRecordType.SIGNED);
+        assertThat(journal.getNextNonce(SENDER)).isEmpty();
+
+        // The torn record is overwritten by the next one, which survives another restart.
+        journal.recordBroadcast(SENDER, BigInteger.ZERO, transaction.transactionHash(), Option.none());
+        journal = reopen();
+
+        assertThat(recordOffsets()).isEqualTo(offsets);
+        assertThat(journal.getRecordCount()).isEqualTo(3);
+        assertThat(journal.getNextNonce(SENDER)).contains(BigInteger.ONE);
+    }
+
+    @Test
+    void discardsEverythingAfterATornRecord() throws IOException {
+        final var first = Transaction.of(0, "first");
+        first.record(journal);
+        final var second = Transaction.of(1, "second");
+        second.record(journal);
+        journal.recordBroadcast(SENDER, BigInteger.ONE, second.transactionHash(), Option.none());
+        journal.close();
+
+        final var offsets = recordOffsets();
+        assertThat(offsets).hasSize(5);
+        // Corrupt the length of the built record of the second transaction.
+        corruptByteAt(offsets.get(2) + Integer.BYTES - 1);
+
+        journal = open();
+
+        assertThat(journal.getRecordCount()).isEqualTo(2);
+        assertThat(journal.getTransactionCount()).isEqualTo(1);
+        assertThat(journal.findByHash(first.transactionHash())).isNotEmpty();
+        assertThat(journal.findByHash(second.hashToSign())).isEmpty();
+        assertThat(journal.findByHash(second.transactionHash())).isEmpty();
+        assertThat(journal.getNextNonce(SENDER)).isEmpty();
+        assertThat(recordOffsets()).hasSize(2);
+    }
+
+    @Test
+    void aRebuiltTransactionReplacesThePreviousOneForItsNonce() throws IOException {
+        final var original = Transaction.of(4, "original");
+        original.record(journal);
+        final var rebuilt = Transaction.of(4, "rebuilt with a higher fee");
+        rebuilt.record(journal);
+
+        assertRebuilt(original, rebuilt);
+
+        journal = reopen();
+
+        assertRebuilt(original, rebuilt);
+        assertThat(journal.getTransactionCount()).isEqualTo(1);
+    }
+
+    private void assertRebuilt(Transaction original, Transaction rebuilt) {
+        assertThat(journal.findByHash(original.hashToSign())).isEmpty();
+        assertThat(journal.findByHash(original.transactionHash())).isEmpty();
+        final var current = journal.findBySenderAndNonce(SENDER, rebuilt.nonce()).get();
+        assertThat(current.hashToSign()).isEqualTo(rebuilt.hashToSign());
+        assertThat(current.transactionHash()).isEqualTo(rebuilt.transactionHash());
+        assertThat(journal.findByHash(rebuilt.hashToSign())).contains(current);
+        assertThat(journal.findByHash(rebuilt.transactionHash())).contains(current);
+    }
+
+    private TransactionJournal open() {
+        final var opened = new TransactionJournal(properties);
+        opened.open();
+        return opened;
+    }
+
+    private TransactionJournal reopen() throws IOException {
+        journal.close();
+        return open();
+    }
+
+    // Offsets of the records in the journal file, walking it as the replay does: up to the first zero length.
+    private List<Long> recordOffsets() throws IOException {
+        final var offsets = new ArrayList<Long>();
+        try (var file = new RandomAccessFile(properties.getFile(), "r")) {
+            var offset = 0L;
+            while (offset + 2 * Integer.BYTES <= file.length()) {
+                file.seek(offset);
+                final var bodyLength = file.readInt();
+                if (bodyLength == 0) {
+                    break;
+                }
+                offsets.add(offset);
+                offset += 2 * Integer.BYTES + bodyLength;
+            }
+        }
+        return offsets;
+    }
+
+    private void corruptByteAt(long offset) throws IOException {
+        try (var file = new RandomAccessFile(properties.getFile(), "rw")) {
+            file.seek(offset);
+            final var value = file.read();
+            file.seek(offset);
+            file.write(value ^ 0x5a);
+        }
+    }
+
+    // Stand-in for a built and signed transaction: only its bytes and hashes matter to the journal.
+    private record Transaction(BigInteger nonce, byte[] unsigned, byte[] signed) {
+
+        static Transaction of(long nonce, String content) {
+            return new Transaction(BigInteger.valueOf(nonce), ("unsigned " + content).getBytes(StandardCharsets.UTF_8),
+                    ("signed " + content).getBytes(StandardCharsets.UTF_8));
+        }
+
+        String hashToSign() {
+            return Numeric.toHexString(Hash.sha3(unsigned));
+        }
+
+        String transactionHash() {
+            return Numeric.toHexString(Hash.sha3(signed));
+        }
+
+        void record(TransactionJournal journal) {
+            journal.recordBuilt(SENDER, nonce, Hash.sha3(unsigned), unsigned);
+            journal.recordSigned(SENDER, nonce, signed);
+        }
+    }
+
+}
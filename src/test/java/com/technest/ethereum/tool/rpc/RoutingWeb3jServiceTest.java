@@ -0,0 +1,144 @@
+package com.technest.ethereum.tool.rpc;
+
+import com.technest.ethereum.tool.configuration.EthereumNetworkConfigProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoutingWeb3jServiceTest {
+
+    private static final String ADDRESS = "0x5aAeb6053F3E94C9b9A09f33669435E7Ef1BeAed";
+
+    private StubNode primary;
+    private StubNode secondary;
+    private EthereumNetworkConfigProperties.Hedging hedging;
+    private RoutingWeb3jService routingService;
+    private Web3j web3j;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        primary = new StubNode(method -> resultOf(method, 1));
+        secondary = new StubNode(method -> resultOf(method, 2));
+
+        // The first call made in the JVM loads the HTTP client classes, which would make whatever endpoint gets it look slow.
+        final var warmUpService = new HttpService(primary.getUrl());
+        Web3j.build(warmUpService).ethBlockNumber().send();
+        warmUpService.close();
+        primary.clearReceived();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        routingService.close();
+        primary.close();
+        secondary.close();
+    }
+
+    @Test
+    void readsGoToTheFastestEndpoint() throws IOException {
+        startRouting(Duration.ofSeconds(5));
+        primary.setDelay(Duration.ofMillis(150));
+
+        for (int i = 0; i < 2; i++) {
+            web3j.ethBlockNumber().send();
+        }
+        primary.clearReceived();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(web3j.ethBlockNumber().send().getBlockNumber()).isEqualTo(BigInteger.TWO);
+        }
+        assertThat(primary.getReceivedMethods()).isEmpty();
+    }
+
+    @Test
+    void failedReadFailsOverToTheNextEndpoint() throws IOException {
+        startRouting(Duration.ofSeconds(5));
+        primary.setFailing(true);
+
+        final var startTime = System.nanoTime();
+        assertThat(web3j.ethBlockNumber().send().getBlockNumber()).isEqualTo(BigInteger.TWO);
+
+        // The first read goes to the primary endpoint, as no latencies have been observed yet, and it's retried right away, without waiting to hedge it.
+        assertThat(primary.countReceived("eth_blockNumber")).isEqualTo(1);
+        assertThat(Duration.ofNanos(System.nanoTime() - startTime)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void slowReadIsHedgedToTheSecondFastestEndpoint() throws IOException {
+        // Makes the primary endpoint the fastest one.
+        startRouting(Duration.ofSeconds(5));
+        secondary.setDelay(Duration.ofMillis(300));
+        web3j.ethBlockNumber().send();
+        web3j.ethBlockNumber().send();
+        primary.clearReceived();
+        secondary.clearReceived();
+
+        hedging.setDefaultDelay(Duration.ofMillis(100));
+        primary.setDelay(Duration.ofSeconds(3));
+        secondary.setDelay(Duration.ZERO);
+        final var startTime = System.nanoTime();
+        assertThat(web3j.ethBlockNumber().send().getBlockNumber()).isEqualTo(BigInteger.TWO);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - startTime)).isLessThan(Duration.ofSeconds(2));
+        assertThat(primary.getReceivedMethods()).containsExactly("eth_blockNumber");
+        assertThat(secondary.getReceivedMethods()).containsExactly("eth_blockNumber");
+    }
+
+    @Test
+    void callsDependingOnThePrimaryEndpointAreNeverRouted() throws IOException {
+        startRouting(Duration.ofSeconds(5));
+        primary.setDelay(Duration.ofMillis(100));
+        web3j.ethBlockNumber().send();
+        web3j.ethBlockNumber().send();
+        primary.clearReceived();
+        secondary.clearReceived();
+
+        assertThat(web3j.ethGetTransactionCount(ADDRESS, DefaultBlockParameterName.LATEST).send().getTransactionCount()).isEqualTo(BigInteger.ONE);
+        web3j.ethGetTransactionReceipt("0x" + "11".repeat(32)).send();
+        assertThat(web3j.ethGetBalance(ADDRESS, DefaultBlockParameterName.PENDING).send().getBalance()).isEqualTo(BigInteger.ONE);
+        web3j.ethCall(Transaction.createEthCallTransaction(ADDRESS, ADDRESS, "0x"), DefaultBlockParameterName.PENDING).send();
+        web3j.ethSendRawTransaction("0x02").send();
+        web3j.newBatch().add(web3j.ethBlockNumber()).add(web3j.ethGetTransactionCount(ADDRESS, DefaultBlockParameterName.PENDING)).send();
+
+        assertThat(secondary.getReceivedMethods()).isEmpty();
+        assertThat(primary.getReceivedMethods()).containsExactly("eth_getTransactionCount", "eth_getTransactionReceipt", "eth_getBalance", "eth_call",
+                "eth_sendRawTransaction", "eth_blockNumber", "eth_getTransactionCount");
+
+        // Same reads at the latest block are still routed.
+        assertThat(web3j.ethGetBalance(ADDRESS, DefaultBlockParameterName.LATEST).send().getBalance()).isEqualTo(BigInteger.TWO);
+        assertThat(secondary.getReceivedMethods()).containsExactly("eth_getBalance");
+    }
+
+    private void startRouting(Duration defaultHedgeDelay) {
+        hedging = new EthereumNetworkConfigProperties.Hedging();
+        hedging.setDefaultDelay(defaultHedgeDelay);
+        hedging.setMinDelay(Duration.ofMillis(50));
+        routingService = new RoutingWeb3jService(List.of(
+                new RpcEndpoint(primary.getUrl(), new HttpService(primary.getUrl())),
+                new RpcEndpoint(secondary.getUrl(), new HttpService(secondary.getUrl()))
+        ), hedging);
+        web3j = Web3j.build(routingService);
+    }
+
+    // Every node answers quantities with its own number, so tests can tell which one answered.
+    private static String resultOf(String method, int node) {
+        return switch (method) {
+            case "eth_getTransactionReceipt" -> "null";
+            case "eth_call" -> "\"0x\"";
+            case "eth_sendRawTransaction" -> "\"0x" + "22".repeat(32) + "\"";
+            default -> "\"0x" + node + "\"";
+        };
+    }
+
+}
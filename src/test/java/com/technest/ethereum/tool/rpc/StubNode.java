@@ -0,0 +1,113 @@
+package com.technest.ethereum.tool.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// JSON-RPC node listening on a local port, answering every call with the given result (JSON) for its method, after the configured delay, or failing with
+// HTTP 500. Methods of the calls it received are kept, answered or not.
+class StubNode implements AutoCloseable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final Function<String, String> results;
+    private final List<String> receivedMethods = new CopyOnWriteArrayList<>();
+    private volatile Duration delay = Duration.ZERO;
+    private volatile boolean failing;
+
+    StubNode(Function<String, String> results) throws IOException {
+        this.results = results;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void setDelay(Duration delay) {
+        this.delay = delay;
+    }
+
+    void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    List<String> getReceivedMethods() {
+        return receivedMethods;
+    }
+
+    long countReceived(String method) {
+        return receivedMethods.stream().filter(method::equals).count();
+    }
+
+    void clearReceived() {
+        receivedMethods.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final var request = OBJECT_MAPPER.readTree(exchange.getRequestBody());
+            if (request.isArray()) {
+                request.forEach(call -> receivedMethods.add(call.get("method").asText()));
+            } else {
+                receivedMethods.add(request.get("method").asText());
+            }
+            Thread.sleep(delay.toMillis());
+            if (failing) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            final JsonNode response;
+            if (request.isArray()) {
+                final var responses = OBJECT_MAPPER.createArrayNode();
+                request.forEach(call -> responses.add(answer(call)));
+                response = responses;
+            } else {
+                response = answer(request);
+            }
+
+            final var body = OBJECT_MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ObjectNode answer(JsonNode call) {
+        final var method = call.get("method").asText();
+
+        final var response = OBJECT_MAPPER.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", call.get("id"));
+        try {
+            response.set("result", OBJECT_MAPPER.readTree(results.apply(method).getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid stub result for " + method, e);
+        }
+        return response;
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.technest.ethereum.tool.service;
+
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Derived addresses must be the ones bitcoinj's BIP-32 derivation gives, turned into Ethereum addresses as everywhere else in the tool.
+class DepositAddressDerivationServiceTest {
+
+    // Derivation is done a chunk of 65,536 indexes at a time.
+    private static final int CHUNK_SIZE = 65_536;
+
+    private final EthereumAddressGeneratorService addressGenerator = new EthereumAddressGeneratorService();
+    private final DepositAddressDerivationService derivationService = new DepositAddressDerivationService();
+    private DeterministicKey parentKey;
+    private String xpub;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        final var seed = new byte[64];
+        new Random(42).nextBytes(seed);
+        parentKey = HDKeyDerivation.deriveChildKey(HDKeyDerivation.createMasterPrivateKey(seed), 0).dropPrivateBytes().dropParent();
+        xpub = parentKey.serializePubB58(MainNetParams.get());
+    }
+
+    @Test
+    void derivesTheSameAddressesAsBitcoinjAndFindsTheirIndexes() throws IOException {
+        final var fromIndex = 7;
+        final var count = CHUNK_SIZE + 100;
+        final var addresses = derive(fromIndex, count);
+
+        assertThat(addresses).hasSize(count);
+        final var random = new Random(42);
+        final var indexes = IntStream.concat(
+                // Both sides of the chunk boundary, and of the first index over 2^16.
+                IntStream.of(fromIndex, fromIndex + 1, fromIndex + CHUNK_SIZE - 2, fromIndex + CHUNK_SIZE - 1, fromIndex + CHUNK_SIZE, fromIndex + CHUNK_SIZE + 1,
+                        CHUNK_SIZE - 1, CHUNK_SIZE, fromIndex + count - 1),
+                IntStream.generate(() -> fromIndex + random.nextInt(count)).limit(200));
+        indexes.forEach(index -> assertThat(addresses.get(index)).as("index %d", index).isEqualTo(expectedAddress(index)));
+
+        addresses.forEach((index, address) -> assertThat(derivationService.findIndex(address)).as("%s", address).contains(index));
+        assertThat(derivationService.findIndex(addresses.get(fromIndex + CHUNK_SIZE).toUpperCase(Locale.ROOT).replace("0X", "0x"))).contains(fromIndex + CHUNK_SIZE);
+        assertThat(derivationService.findIndex(expectedAddress(fromIndex - 1))).isEmpty();
+        assertThat(derivationService.findIndex(expectedAddress(fromIndex + count))).isEmpty();
+
+        // Only addresses from the last derivation are looked up.
+        derive(0, 10);
+        assertThat(derivationService.findIndex(addresses.get(fromIndex + 100))).isEmpty();
+        assertThat(derivationService.findIndex(addresses.get(fromIndex))).contains(fromIndex);
+    }
+
+    @Test
+    void derivesTheHighestIndexes() throws IOException {
+        final var fromIndex = Integer.MAX_VALUE - 4;
+        final var addresses = derive(fromIndex, 4);
+
+        assertThat(addresses.keySet()).containsExactly(fromIndex, fromIndex + 1, fromIndex + 2, fromIndex + 3);
+        addresses.forEach((index, address) -> assertThat(address).as("index %d", index).isEqualTo(expectedAddress(index)));
+        assertThatThrownBy(() -> derive(fromIndex, 5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void addressIndexTableProbesPastCollidingAddresses() {
+        final var random = new Random(42);
+        final var table = new AddressIndexTable(1_000);
+        final var addresses = new byte[1_000 * 20];
+        random.nextBytes(addresses);
+        // The first 20 addresses have the same first bytes, so they hash to the same slot.
+        for (int i = 0; i < 20; i++) {
+            System.arraycopy(addresses, 0, addresses, i * 20, 4);
+        }
+        IntStream.range(0, 1_000).forEach(index -> table.put(addresses, index * 20, index));
+
+        assertThat(table.size()).isEqualTo(1_000);
+        IntStream.range(0, 1_000).forEach(index -> {
+            final var address = new byte[20];
+            System.arraycopy(addresses, index * 20, address, 0, 20);
+            assertThat(table.get(address)).isEqualTo(index);
+        });
+        assertThat(table.get(new byte[20])).isEqualTo(-1);
+    }
+
+    private Map<Integer, String> derive(int fromIndex, int count) throws IOException {
+        final var outputFile = tempDir.resolve("addresses.csv");
+        assertThat(derivationService.deriveToFile(xpub, fromIndex, count, outputFile).derived()).isEqualTo(count);
+
+        final var addresses = new LinkedHashMap<Integer, String>();
+        try (final var lines = Files.lines(outputFile)) {
+            lines.skip(1).map(line -> line.split(",")).forEach(fields -> addresses.put(Integer.parseInt(fields[0]), fields[1]));
+        }
+        return addresses;
+    }
+
+    private String expectedAddress(int index) {
+        return addressGenerator.generateAddressFrom(HDKeyDerivation.deriveChildKey(parentKey, index));
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.technest.ethereum.tool.service;
+
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint8;
+import org.web3j.tx.exceptions.ContractCallException;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The codec must give the same call data, byte for byte, and the same decoded values as web3j's FunctionEncoder and FunctionReturnDecoder.
+class ERC20AbiCodecTest {
+
+    private static final String WORD_OF_ZEROS = "0".repeat(64);
+
+    private final Random random = new Random(42);
+
+    @Test
+    void encodesCallsLikeWeb3j() {
+        for (int i = 0; i < 10_000; i++) {
+            final var address = Numeric.toHexStringWithPrefixZeroPadded(new BigInteger(160, random), 40);
+            final var value = new BigInteger(1 + random.nextInt(256), random);
+
+            assertThat(ERC20AbiCodec.encodeTransfer(address, value)).isEqualTo(FunctionEncoder.encode(
+                    new Function("transfer", List.of(new Address(address), new Uint256(value)), Collections.emptyList())));
+            assertThat(ERC20AbiCodec.encodeBalanceOf(address)).isEqualTo(FunctionEncoder.encode(
+                    new Function("balanceOf", List.of(new Address(address)), List.of(new TypeReference<Uint256>() {}))));
+        }
+
+        assertThat(ERC20AbiCodec.NAME_CALL).isEqualTo(FunctionEncoder.encode(new Function("name", Collections.emptyList(), Collections.emptyList())));
+        assertThat(ERC20AbiCodec.SYMBOL_CALL).isEqualTo(FunctionEncoder.encode(new Function("symbol", Collections.emptyList(), Collections.emptyList())));
+        assertThat(ERC20AbiCodec.DECIMALS_CALL).isEqualTo(FunctionEncoder.encode(new Function("decimals", Collections.emptyList(), Collections.emptyList())));
+    }
+
+    @Test
+    void decodesResultsLikeWeb3j() {
+        for (int i = 0; i < 10_000; i++) {
+            final var uint256 = Numeric.toHexStringWithPrefixZeroPadded(new BigInteger(1 + random.nextInt(256), random), 64);
+            assertThat(ERC20AbiCodec.decodeUint256(uint256)).isEqualTo(decode(uint256, new TypeReference<Uint256>() {}));
+
+            final var uint8 = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(random.nextInt(256)), 64);
+            assertThat(ERC20AbiCodec.decodeUint8(uint8)).isEqualTo(decode(uint8, new TypeReference<Uint8>() {}));
+
+            final var string = encodeString(randomString());
+            assertThat(ERC20AbiCodec.decodeString(string)).isEqualTo(decode(string, new TypeReference<Utf8String>() {}));
+        }
+    }
+
+    @Test
+    void decodesBytes32Strings() {
+        assertThat(ERC20AbiCodec.decodeString("0x4d4b52" + "0".repeat(58))).isEqualTo("MKR");
+    }
+
+    @Test
+    void rejectsMalformedResults() {
+        assertThatThrownBy(() -> ERC20AbiCodec.decodeUint256("0x")).isInstanceOf(ContractCallException.class);
+        assertThatThrownBy(() -> ERC20AbiCodec.decodeUint8(Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(256), 64)))
+                .isInstanceOf(ContractCallException.class);
+
+        // Offsets and lengths adding up past Integer.MAX_VALUE must not wrap around.
+        assertThatThrownBy(() -> ERC20AbiCodec.decodeString("0x" + word(0x20) + word(Integer.MAX_VALUE) + WORD_OF_ZEROS))
+                .isInstanceOf(ContractCallException.class);
+        assertThatThrownBy(() -> ERC20AbiCodec.decodeString("0x" + word(Integer.MAX_VALUE - 16) + WORD_OF_ZEROS))
+                .isInstanceOf(ContractCallException.class);
+        assertThatThrownBy(() -> ERC20AbiCodec.decodeString("0x" + word(0x20) + word(0x21) + WORD_OF_ZEROS))
+                .isInstanceOf(ContractCallException.class);
+        assertThatThrownBy(() -> ERC20AbiCodec.decodeString("0x" + "ff".repeat(32) + WORD_OF_ZEROS))
+                .isInstanceOf(ContractCallException.class);
+    }
+
+    private static <T extends Type> Object decode(String result, TypeReference<T> type) {
+        @SuppressWarnings("unchecked")
+        final List<TypeReference<Type>> outputs = List.of((TypeReference<Type>) (TypeReference<?>) type);
+        return FunctionReturnDecoder.decode(result, outputs).get(0).getValue();
+    }
+
+    private static String encodeString(String value) {
+        return "0x" + word(32) + FunctionEncoder.encodeConstructor(List.of(new Utf8String(value))).substring(64);
+    }
+
+    private static String word(int value) {
+        return Numeric.toHexStringNoPrefixZeroPadded(BigInteger.valueOf(value), 64);
+    }
+
+    private String randomString() {
+        final var builder = new StringBuilder();
+        final var length = random.nextInt(80);
+        for (int i = 0; i < length; i++) {
+            builder.appendCodePoint(random.nextInt(10) == 0 ? 0x4e00 + random.nextInt(0x5000) : 'a' + random.nextInt(26));
+        }
+        return builder.toString();
+    }
+
+}
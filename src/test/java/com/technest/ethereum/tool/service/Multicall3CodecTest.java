@@ -0,0 +1,128 @@
+package com.technest.ethereum.tool.service;
+
+import io.vavr.control.Option;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.DynamicStruct;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The codec must give the same call data, byte for byte, as web3j's FunctionEncoder for aggregate3((address,bool,bytes)[]), and the same values as
+// FunctionReturnDecoder for its (bool,bytes)[] results.
+class Multicall3CodecTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void encodesAggregate3LikeWeb3j() {
+        for (int count : new int[]{0, 1, 2, 3, 17, 250}) {
+            final var calls = new ArrayList<Multicall3Codec.Call>();
+            for (int i = 0; i < count; i++) {
+                final var selector = random.nextBoolean() ? Multicall3Codec.BALANCE_OF_SELECTOR : Multicall3Codec.GET_ETH_BALANCE_SELECTOR;
+                calls.add(new Multicall3Codec.Call(randomAddress(), selector, randomAddress()));
+            }
+
+            final var web3jCalls = calls.stream().map(call -> new Call3(new Address(call.target()), new Bool(true), new DynamicBytes(
+                    Numeric.hexStringToByteArray(Numeric.toHexStringNoPrefix(call.selector()) + "0".repeat(24) + Numeric.cleanHexPrefix(call.address()))))).toList();
+            assertThat(Multicall3Codec.encodeAggregate3(calls)).as("%d calls", count).isEqualTo(FunctionEncoder.encode(
+                    new Function("aggregate3", List.of(new DynamicArray<>(Call3.class, web3jCalls)), Collections.emptyList())));
+        }
+    }
+
+    @Test
+    void decodesAggregate3ResultsLikeWeb3j() {
+        for (int count : new int[]{1, 2, 3, 17, 250}) {
+            final var results = new ArrayList<Result>();
+            for (int i = 0; i < count; i++) {
+                final var returnData = switch (random.nextInt(5)) {
+                    // A contract which isn't a token may succeed without returning anything, or return something else than a word.
+                    case 0 -> new byte[0];
+                    case 1 -> randomBytes(1 + random.nextInt(96));
+                    default -> Numeric.toBytesPadded(new BigInteger(1 + random.nextInt(256), random), 32);
+                };
+                results.add(new Result(new Bool(random.nextInt(4) != 0), new DynamicBytes(returnData)));
+            }
+            final var response = "0x" + FunctionEncoder.encodeConstructor(List.of(new DynamicArray<>(Result.class, results)));
+
+            assertThat(Multicall3Codec.decodeAggregate3Uints(response, count)).as("%d results", count).isEqualTo(decode(response));
+        }
+    }
+
+    @Test
+    void rejectsMalformedResponses() {
+        assertThatThrownBy(() -> Multicall3Codec.decodeAggregate3Uints("0x", 1)).isInstanceOf(IllegalArgumentException.class);
+        final var response = "0x" + FunctionEncoder.encodeConstructor(List.of(new DynamicArray<>(Result.class,
+                List.of(new Result(new Bool(true), new DynamicBytes(new byte[32]))))));
+        assertThatThrownBy(() -> Multicall3Codec.decodeAggregate3Uints(response, 2)).isInstanceOf(IllegalArgumentException.class);
+
+        // Offsets adding up past Integer.MAX_VALUE must not wrap around.
+        assertThatThrownBy(() -> Multicall3Codec.decodeAggregate3Uints("0x" + word(Integer.MAX_VALUE - 16) + word(1), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Multicall3Codec.decodeAggregate3Uints("0x" + word(0x20) + word(1) + word(Integer.MAX_VALUE), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Multicall3Codec.decodeAggregate3Uints(response.substring(0, response.length() - 64), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<Option<BigInteger>> decode(String response) {
+        @SuppressWarnings("unchecked")
+        final List<TypeReference<Type>> outputs = List.of((TypeReference<Type>) (TypeReference<?>) new TypeReference<DynamicArray<Result>>() {});
+        @SuppressWarnings("unchecked")
+        final var results = (List<Result>) FunctionReturnDecoder.decode(response, outputs).get(0).getValue();
+        return results.stream()
+                .map(result -> result.success && result.returnData.length == 32 ? Option.of(new BigInteger(1, result.returnData)) : Option.<BigInteger>none())
+                .toList();
+    }
+
+    private String randomAddress() {
+        return Numeric.toHexStringWithPrefixZeroPadded(new BigInteger(160, random), 40);
+    }
+
+    private byte[] randomBytes(int length) {
+        final var bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String word(int value) {
+        return Numeric.toHexStringNoPrefixZeroPadded(BigInteger.valueOf(value), 64);
+    }
+
+    public static class Call3 extends DynamicStruct {
+
+        public Call3(Address target, Bool allowFailure, DynamicBytes callData) {
+            super(target, allowFailure, callData);
+        }
+
+    }
+
+    public static class Result extends DynamicStruct {
+
+        public final boolean success;
+        public final byte[] returnData;
+
+        public Result(Bool success, DynamicBytes returnData) {
+            super(success, returnData);
+            this.success = success.getValue();
+            this.returnData = returnData.getValue();
+        }
+
+    }
+
+}